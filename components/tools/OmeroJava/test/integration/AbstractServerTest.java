@@ -18,8 +18,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ome.formats.OMEROMetadataStoreClient;
 import ome.formats.importer.IObservable;
@@ -2344,6 +2347,147 @@ public class AbstractServerTest extends AbstractTest {
         return assertCmd(cb, pass);
     }
 
+    /**
+     * A callback which completes a future when the server notifies it that
+     * the request has finished, so that no thread has to poll the handle.
+     */
+    protected static class FutureCallback extends CmdCallbackI {
+
+        /* not initialized in its declaration as onFinished may be called
+         * from the superclass constructor */
+        private CompletableFuture<Response> future;
+
+        public FutureCallback(omero.client c, HandlePrx handle)
+                throws ServerError {
+            super(c, handle);
+        }
+
+        /**
+         * @return the future response of the request
+         */
+        public synchronized CompletableFuture<Response> getFuture() {
+            if (future == null) {
+                future = new CompletableFuture<Response>();
+            }
+            return future;
+        }
+
+        @Override
+        public void onFinished(Response rsp, Status status,
+                Ice.Current __current) {
+            getFuture().complete(rsp);
+        }
+    }
+
+    /**
+     * Submits the request without waiting for it. The callback and the
+     * handle are closed once the request has finished, so many requests may
+     * be in progress at once without a thread waiting on each of them.
+     *
+     * @param c
+     *            The client to submit the request with.
+     * @param change
+     *            The request to submit.
+     * @return the future response of the request
+     * @throws ServerError
+     *             Thrown if the request could not be submitted.
+     */
+    protected CompletableFuture<Response> submitChange(omero.client c,
+            Request change) throws ServerError {
+        final HandlePrx prx = c.getSession().submit(change);
+        final FutureCallback cb = new FutureCallback(c, prx);
+        /* closing is a remote call so not done on the callback's thread */
+        return cb.getFuture().whenCompleteAsync((rsp, t) -> {
+            try {
+                cb.close(true);
+            } catch (Exception e) {
+                /* the response is already known */
+            }
+        });
+    }
+
+    /**
+     * Submits independent requests as separate requests rather than as one
+     * {@link DoAll}, which runs them one after the other, with at most
+     * <code>workers</code> of them in progress at once. A request which
+     * fails, or which cannot even be submitted, does not stop the others:
+     * a request which cannot be submitted is given an {@link ERR} response
+     * holding the error.
+     *
+     * @param c
+     *            The client to submit the requests with.
+     * @param workers
+     *            The maximum number of requests in progress at once, at
+     *            least one.
+     * @param changes
+     *            The requests to submit.
+     * @return the response of each request, in the order of the requests
+     * @throws Exception
+     *             Thrown if the requests did not all finish in time.
+     */
+    protected List<Response> doChangesConcurrently(omero.client c,
+            int workers, Request... changes) throws Exception {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be positive");
+        }
+        final Response[] responses = new Response[changes.length];
+        final AtomicInteger next = new AtomicInteger();
+        final List<CompletableFuture<Void>> lanes =
+                new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < Math.min(workers, changes.length); i++) {
+            lanes.add(doNextChange(c, changes, responses, next));
+        }
+        CompletableFuture.allOf(lanes.toArray(new CompletableFuture[0]))
+                .get(20L * scalingFactor * changes.length,
+                        TimeUnit.MILLISECONDS);
+        return Arrays.asList(responses);
+    }
+
+    /**
+     * Submits the next request not yet taken, then the next one again once
+     * it has finished, until none is left. Requests which fail to be
+     * submitted are given an error response and skipped in a loop rather
+     * than by recursion, so that a dead session cannot overflow the stack.
+     */
+    private CompletableFuture<Void> doNextChange(final omero.client c,
+            final Request[] changes, final Response[] responses,
+            final AtomicInteger next) {
+        while (true) {
+            final int i = next.getAndIncrement();
+            if (i >= changes.length) {
+                return CompletableFuture.completedFuture(null);
+            }
+            final CompletableFuture<Response> future;
+            try {
+                future = submitChange(c, changes[i]);
+            } catch (ServerError se) {
+                responses[i] = submitFailed(se.ice_name(),
+                        String.valueOf(se.message));
+                continue;
+            } catch (Ice.LocalException le) {
+                /* e.g. the connection was lost */
+                responses[i] = submitFailed(le.ice_name(), le.toString());
+                continue;
+            }
+            return future.thenCompose(rsp -> {
+                responses[i] = rsp;
+                return doNextChange(c, changes, responses, next);
+            });
+        }
+    }
+
+    /**
+     * Returns the response given to a request which could not be submitted.
+     */
+    private static ERR submitFailed(String category, String message) {
+        final ERR err = new ERR();
+        err.category = category;
+        err.name = "submit-failed";
+        err.parameters = new HashMap<String, String>();
+        err.parameters.put("message", message);
+        return err;
+    }
+
     protected CmdCallbackI callback(boolean passes, omero.client c,
             omero.cmd.Request... reqs) throws ApiUsageException, ServerError,
             InterruptedException {
@@ -17,7 +17,10 @@
  */
 package integration;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -170,4 +173,57 @@ public class CmdCallbackTest extends AbstractServerTest {
         // For some reason the number of steps is varying between 10 and 15
     }
 
+    // Futures
+    // =========================================================================
+
+    @Test
+    public void testTimingFinishesOnFuture() throws Exception {
+        EventContext ec = newUserAndGroup("rw----");
+        loginUser(ec);
+        Timing t = new Timing();
+        t.millisPerStep = 25;
+        t.steps = 4 * 10; // Runs 1 second
+        Response rsp = submitChange(client, t).get(1500, TimeUnit.MILLISECONDS);
+        Assert.assertFalse(rsp instanceof ERR, String.valueOf(rsp));
+    }
+
+    /**
+     * Many requests may be awaited at once without a thread for each.
+     */
+    @Test
+    public void testManyTimingsFinishOnFutures() throws Exception {
+        EventContext ec = newUserAndGroup("rw----");
+        loginUser(ec);
+        List<CompletableFuture<Response>> futures =
+                new ArrayList<CompletableFuture<Response>>();
+        for (int i = 0; i < 20; i++) {
+            Timing t = new Timing();
+            t.millisPerStep = 25;
+            t.steps = 4 * 10; // Runs 1 second
+            futures.add(submitChange(client, t));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .get(20, TimeUnit.SECONDS);
+        for (CompletableFuture<Response> future : futures) {
+            Response rsp = future.get();
+            Assert.assertFalse(rsp instanceof ERR, String.valueOf(rsp));
+        }
+    }
+
+    @Test
+    public void testTimingsFinishConcurrently() throws Exception {
+        EventContext ec = newUserAndGroup("rw----");
+        loginUser(ec);
+        Timing[] timings = new Timing[10];
+        for (int i = 0; i < timings.length; i++) {
+            timings[i] = new Timing(25, 4 * 2); // 200 ms
+        }
+        List<Response> responses = doChangesConcurrently(client, 3, timings);
+        Assert.assertEquals(responses.size(), timings.length);
+        for (Response rsp : responses) {
+            Assert.assertNotNull(rsp);
+            Assert.assertFalse(rsp instanceof ERR, String.valueOf(rsp));
+        }
+    }
+
 }
@@ -116,6 +116,7 @@ public class LightAdminRolesTest extends RolesTests {
         final ITypesPrx svc = root.getSession().getTypesService();
         svc.resetEnumerations(ContrastMethod.class.getName());
         svc.resetEnumerations(DetectorType.class.getName());
+        ModelMockFactory.clearEnumerations();
         super.tearDown();
     }
 
@@ -2565,6 +2566,8 @@ public class LightAdminRolesTest extends RolesTests {
         Assert.assertEquals(types.size(), (n-count));
         //reset the deleted enumerations
         types_svc.resetEnumerations(DetectorType.class.getName());
+        //the entries cached by the model factory may have been deleted
+        ModelMockFactory.clearEnumerations();
         types = types_svc.allEnumerations(DetectorType.class.getName());
         //We should be back to the original list. Other enum might have been
         //added by other tests.
@@ -10,7 +10,10 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.imageio.ImageIO;
 import javax.imageio.ImageWriter;
@@ -100,6 +103,10 @@ public class ModelMockFactory {
     /** Helper reference to the <code>ITypes</code> service. */
     private ITypesPrx typesService;
 
+    /** The enumeration entries by enumeration class simple name. */
+    private static final ConcurrentMap<String, List<IObject>> ENUMERATIONS =
+            new ConcurrentHashMap<String, List<IObject>>();
+
     /** all {@link ExperimentType}s */
     private ImmutableList<ExperimentType> experimentTypes;
 
@@ -123,16 +130,67 @@ public class ModelMockFactory {
      */
     public ModelMockFactory(ITypesPrx typesService) throws ServerError {
         this.typesService = typesService;
+        loadEnumerations();
         getExperimentTypes();
     }
 
+    /**
+     * Loads all the enumerations in one call unless they are already cached.
+     * @throws ServerError unexpected
+     */
+    public void loadEnumerations() throws ServerError {
+        if (!ENUMERATIONS.isEmpty()) {
+            return;
+        }
+        for (final Map.Entry<String, List<IObject>> entry
+                : typesService.getEnumerationsWithEntries().entrySet()) {
+            ENUMERATIONS.putIfAbsent(getSimpleName(entry.getKey()),
+                    ImmutableList.copyOf(entry.getValue()));
+        }
+    }
+
+    /**
+     * Clears the enumerations cached for all the instances, e.g. after a
+     * test has added or removed an enumeration entry.
+     */
+    public static void clearEnumerations() {
+        ENUMERATIONS.clear();
+    }
+
+    /**
+     * Returns the entries of an enumeration, from the cache shared by all
+     * the instances if possible. Enumerations are the same for every user
+     * and group and hardly ever change, so they are only fetched from the
+     * server once.
+     * @param type the class of the enumeration
+     * @return the entries of the enumeration
+     * @throws ServerError unexpected
+     */
+    private List<IObject> allEnumerations(String type) throws ServerError {
+        final String key = getSimpleName(type);
+        List<IObject> entries = ENUMERATIONS.get(key);
+        if (entries == null) {
+            entries = ImmutableList.copyOf(typesService.allEnumerations(type));
+            ENUMERATIONS.putIfAbsent(key, entries);
+        }
+        return entries;
+    }
+
+    /**
+     * @param type a class name, with or without its package
+     * @return the class name without its package
+     */
+    private static String getSimpleName(String type) {
+        return type.substring(type.lastIndexOf('.') + 1);
+    }
+
     /**
      * Note the experiment types from the pixels service.
      * @throws ServerError unexpected
      */
     public void getExperimentTypes() throws ServerError {
         final Builder<ExperimentType> builder = ImmutableList.builder();
-        for (final IObject experimentType : typesService.allEnumerations(ExperimentType.class.getName())) {
+        for (final IObject experimentType : allEnumerations(ExperimentType.class.getName())) {
             builder.add((ExperimentType) experimentType);
         }
         experimentTypes = builder.build();
@@ -357,8 +415,7 @@ public class ModelMockFactory {
      *             Thrown if an error occurred.
      */
     public Detector createDetector() throws Exception {
-        List<IObject> types = typesService
-                .allEnumerations(DetectorType.class.getName());
+        List<IObject> types = allEnumerations(DetectorType.class.getName());
         Detector detector = new DetectorI();
         detector.setAmplificationGain(omero.rtypes.rdouble(0));
         detector.setGain(omero.rtypes.rdouble(1));
@@ -384,7 +441,7 @@ public class ModelMockFactory {
      */
     public OTF createOTF(FilterSet filterSet, Objective objective)
             throws Exception {
-        List<IObject> types = typesService.allEnumerations(PixelsType.class
+        List<IObject> types = allEnumerations(PixelsType.class
                 .getName());
         OTF otf = new OTFI();
         otf.setFilterSet(filterSet);
@@ -410,7 +467,7 @@ public class ModelMockFactory {
      *             Thrown if an error occurred.
      */
     public Filter createFilter(int cutIn, int cutOut) throws Exception {
-        List<IObject> types = typesService.allEnumerations(FilterType.class
+        List<IObject> types = allEnumerations(FilterType.class
                 .getName());
         Filter filter = new FilterI();
         filter.setLotNumber(omero.rtypes.rstring("lot number"));
@@ -475,11 +532,11 @@ public class ModelMockFactory {
         objective.setLotNumber(omero.rtypes.rstring("lot number"));
         objective.setCalibratedMagnification(omero.rtypes.rdouble(1));
         // correction
-        List<IObject> types = typesService.allEnumerations(Correction.class
+        List<IObject> types = allEnumerations(Correction.class
                 .getName());
         objective.setCorrection((Correction) types.get(0));
         // immersion
-        types = typesService.allEnumerations(Immersion.class.getName());
+        types = allEnumerations(Immersion.class.getName());
         objective.setImmersion((Immersion) types.get(0));
 
         objective.setIris(omero.rtypes.rbool(true));
@@ -500,7 +557,7 @@ public class ModelMockFactory {
      */
     public ObjectiveSettings createObjectiveSettings(Objective objective)
             throws Exception {
-        List<IObject> types = typesService.allEnumerations(Medium.class
+        List<IObject> types = allEnumerations(Medium.class
                 .getName());
         ObjectiveSettings settings = new ObjectiveSettingsI();
         settings.setCorrectionCollar(omero.rtypes.rdouble(1));
@@ -548,7 +605,7 @@ public class ModelMockFactory {
      *             Thrown if an error occurred.
      */
     DetectorSettings createDetectorSettings(Detector detector) throws Exception {
-        List<IObject> types = typesService.allEnumerations(Binning.class
+        List<IObject> types = allEnumerations(Binning.class
                 .getName());
         DetectorSettings settings = new DetectorSettingsI();
         settings.setBinning((Binning) types.get(0));
@@ -571,7 +628,7 @@ public class ModelMockFactory {
      */
     public LightSettings createLightSettings(LightSource light)
             throws Exception {
-        List<IObject> types = typesService.allEnumerations(MicrobeamManipulationType.class.getName());
+        List<IObject> types = allEnumerations(MicrobeamManipulationType.class.getName());
         LightSettings settings = new LightSettingsI();
         settings.setLightSource(light);
         settings.setAttenuation(omero.rtypes.rdouble(1));
@@ -611,7 +668,7 @@ public class ModelMockFactory {
      *             Thrown if an error occurred.
      */
     public Filament createFilament() throws Exception {
-        List<IObject> types = typesService.allEnumerations(FilamentType.class.getName());
+        List<IObject> types = allEnumerations(FilamentType.class.getName());
         Filament filament = new FilamentI();
         filament.setManufacturer(omero.rtypes.rstring("manufacturer"));
         filament.setModel(omero.rtypes.rstring("model"));
@@ -631,7 +688,7 @@ public class ModelMockFactory {
      *             Thrown if an error occurred.
      */
     public Arc createArc() throws Exception {
-        List<IObject> types = typesService.allEnumerations(ArcType.class
+        List<IObject> types = allEnumerations(ArcType.class
                 .getName());
         Arc arc = new ArcI();
         arc.setManufacturer(omero.rtypes.rstring("manufacturer"));
@@ -676,15 +733,15 @@ public class ModelMockFactory {
         laser.setLotNumber(omero.rtypes.rstring("lot number"));
         laser.setSerialNumber(omero.rtypes.rstring("serial number"));
         // type
-        List<IObject> types = typesService.allEnumerations(LaserType.class
+        List<IObject> types = allEnumerations(LaserType.class
                 .getName());
         laser.setType((LaserType) types.get(0));
         // laser medium
-        types = typesService.allEnumerations(LaserMedium.class.getName());
+        types = allEnumerations(LaserMedium.class.getName());
         laser.setLaserMedium((LaserMedium) types.get(0));
 
         // pulse
-        types = typesService.allEnumerations(Pulse.class.getName());
+        types = allEnumerations(Pulse.class.getName());
         laser.setPulse((Pulse) types.get(0));
 
         laser.setFrequencyMultiplication(omero.rtypes.rint(1));
@@ -704,7 +761,7 @@ public class ModelMockFactory {
      *             Thrown if an error occurred.
      */
     public Instrument createInstrument() throws Exception {
-        List<IObject> types = typesService.allEnumerations(MicroscopeType.class.getName());
+        List<IObject> types = allEnumerations(MicroscopeType.class.getName());
         Instrument instrument = new InstrumentI();
         MicroscopeI microscope = new MicroscopeI();
         microscope.setManufacturer(omero.rtypes.rstring("manufacturer"));
@@ -839,7 +896,7 @@ public class ModelMockFactory {
      */
     public Pixels createPixels(int sizeX, int sizeY, int sizeZ, int sizeT,
             int sizeC, String pxType) throws Exception {
-        List<IObject> types = typesService.allEnumerations(PixelsType.class
+        List<IObject> types = allEnumerations(PixelsType.class
                 .getName());
         Iterator<IObject> i = types.iterator();
         PixelsType object;
@@ -853,7 +910,7 @@ public class ModelMockFactory {
         }
         if (type == null)
             type = (PixelsType) types.get(0);
-        types = typesService.allEnumerations(DimensionOrder.class.getName());
+        types = allEnumerations(DimensionOrder.class.getName());
         i = types.iterator();
         DimensionOrder o;
         DimensionOrder order = null;
@@ -912,12 +969,12 @@ public class ModelMockFactory {
         Channel channel = new ChannelI();
         LogicalChannel lc = new LogicalChannelI();
         lc.setEmissionWave(new LengthI(200.1, UnitsFactory.Channel_EmissionWavelength));
-        List<IObject> types = typesService.allEnumerations(ContrastMethod.class.getName());
+        List<IObject> types = allEnumerations(ContrastMethod.class.getName());
         ContrastMethod cm = (ContrastMethod) types.get(0);
 
-        types = typesService.allEnumerations(Illumination.class.getName());
+        types = allEnumerations(Illumination.class.getName());
         Illumination illumination = (Illumination) types.get(0);
-        types = typesService.allEnumerations(AcquisitionMode.class
+        types = allEnumerations(AcquisitionMode.class
                 .getName());
         AcquisitionMode mode = (AcquisitionMode) types.get(0);
         lc.setContrastMethod(cm);
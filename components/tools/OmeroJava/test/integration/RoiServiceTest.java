@@ -16,9 +16,17 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import omero.ApiUsageException;
+import omero.RDouble;
+import omero.RLong;
+import omero.RType;
 import omero.ServerError;
 import omero.api.IRoiPrx;
 import omero.api.RawPixelsStorePrx;
@@ -60,8 +68,10 @@ import omero.model.RoiAnnotationLinkI;
 import omero.model.RoiI;
 import omero.model.Shape;
 import omero.model.Well;
+import omero.sys.ParametersI;
 
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import omero.gateway.model.FileAnnotationData;
@@ -771,4 +781,162 @@ public class RoiServiceTest extends AbstractServerTest {
             assertEquals(calcStats.mean[0], expStats.mean[0]);
         }
     }
+
+    /**
+     * Provides the number of shapes used by {@link #testStatsBenchmark(int)}.
+     * @return See above.
+     */
+    @DataProvider(name = "stats benchmark shape counts")
+    public Object[][] provideStatsBenchmarkShapeCounts() {
+        return new Object[][] { { 10000 }, { 100000 } };
+    }
+
+    /**
+     * Compares the time taken to compute the statistics of many small
+     * rectangles on one plane when the shapes are sent in batches of
+     * consecutive ids, one batch after the other, and when they are sorted
+     * by tile and the batches of each tile are sent in parallel. The
+     * statistics must be the same in both cases.
+     * @param shapeCount the number of shapes to create
+     * @throws Exception unexpected
+     */
+    @Test(groups = "benchmark", dataProvider = "stats benchmark shape counts",
+            timeOut = 3600000)
+    public void testStatsBenchmark(int shapeCount) throws Exception {
+        final int sizeXY = 1024;
+        final int tileXY = 256;
+        final int rectXY = 8;
+        final int batchSize = 1000;
+        final int shapesPerRoi = 100;
+        final int workers = 4;
+        final IRoiPrx svc = factory.getRoiService();
+
+        Image img = mmFactory.createImage(
+            sizeXY, sizeXY, 1, 1, 1, ModelMockFactory.UINT8);
+        img = (Image) iUpdate.saveAndReturnObject(img);
+        final RawPixelsStorePrx rawPixStore = factory.createRawPixelsStore();
+        try {
+            rawPixStore.setPixelsId(img.getPrimaryPixels().getId().getValue(),
+                    true);
+            final byte[] bytes = new byte[sizeXY * sizeXY];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) (i % Byte.MAX_VALUE);
+            }
+            rawPixStore.setPlane(bytes, 0, 0, 0);
+        } finally {
+            rawPixStore.close();
+        }
+
+        /* spread the rectangles over the plane, overlapping once all the
+         * positions are taken */
+        final int perRow = sizeXY / rectXY;
+        List<IObject> rois = new ArrayList<IObject>();
+        for (int i = 0; i < shapeCount; i++) {
+            if (i % shapesPerRoi == 0) {
+                final Roi roi = new RoiI();
+                roi.setImage((Image) img.proxy());
+                rois.add(roi);
+            }
+            final int position = i % (perRow * perRow);
+            final Rectangle rect = new RectangleI();
+            rect.setX(omero.rtypes.rdouble((position % perRow) * rectXY));
+            rect.setY(omero.rtypes.rdouble((position / perRow) * rectXY));
+            rect.setWidth(omero.rtypes.rdouble(rectXY));
+            rect.setHeight(omero.rtypes.rdouble(rectXY));
+            rect.setTheC(omero.rtypes.rint(0));
+            rect.setTheZ(omero.rtypes.rint(0));
+            rect.setTheT(omero.rtypes.rint(0));
+            ((Roi) rois.get(rois.size() - 1)).addShape(rect);
+            if (rois.size() == batchSize / shapesPerRoi) {
+                iUpdate.saveAndReturnIds(rois);
+                rois = new ArrayList<IObject>();
+            }
+        }
+        if (!rois.isEmpty()) {
+            iUpdate.saveAndReturnIds(rois);
+        }
+
+        /* group the shape ids by the tile holding their origin */
+        final Map<Integer, List<Long>> idsByTile =
+                new TreeMap<Integer, List<Long>>();
+        final List<Long> ids = new ArrayList<Long>(shapeCount);
+        final List<List<RType>> rows = iQuery.projection(
+                "SELECT r.id, r.x, r.y FROM Rectangle r "
+                + "WHERE r.roi.image.id = :id ORDER BY r.id", new ParametersI().addId(img.getId()));
+        for (final List<RType> row : rows) {
+            final long id = ((RLong) row.get(0)).getValue();
+            final int tileX = (int) ((RDouble) row.get(1)).getValue() / tileXY;
+            final int tileY = (int) ((RDouble) row.get(2)).getValue() / tileXY;
+            final int tile = tileY * (sizeXY / tileXY) + tileX;
+            List<Long> tileIds = idsByTile.get(tile);
+            if (tileIds == null) {
+                tileIds = new ArrayList<Long>();
+                idsByTile.put(tile, tileIds);
+            }
+            tileIds.add(id);
+            ids.add(id);
+        }
+        assertEquals(ids.size(), shapeCount);
+
+        /* batches of consecutive ids, sent one after the other */
+        final Map<Long, ShapeStats> serial = new HashMap<Long, ShapeStats>();
+        long start = System.nanoTime();
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            final List<Long> batch = ids.subList(from,
+                    Math.min(from + batchSize, ids.size()));
+            for (final ShapeStats stats : svc.getShapeStatsRestricted(
+                    batch, 0, 0, new int[] {0})) {
+                serial.put(stats.shapeId, stats);
+            }
+        }
+        final long serialTime = System.nanoTime() - start;
+
+        /* batches of the shapes of one tile, sent in parallel */
+        final List<List<Long>> batches = new ArrayList<List<Long>>();
+        for (final List<Long> tileIds : idsByTile.values()) {
+            for (int from = 0; from < tileIds.size(); from += batchSize) {
+                batches.add(tileIds.subList(from,
+                        Math.min(from + batchSize, tileIds.size())));
+            }
+        }
+        final ExecutorService pool = Executors.newFixedThreadPool(workers);
+        final Map<Long, ShapeStats> parallel = new HashMap<Long, ShapeStats>();
+        start = System.nanoTime();
+        try {
+            final List<Future<ShapeStats[]>> results =
+                    new ArrayList<Future<ShapeStats[]>>();
+            for (final List<Long> batch : batches) {
+                results.add(pool.submit(new Callable<ShapeStats[]>() {
+                    @Override
+                    public ShapeStats[] call() throws ServerError {
+                        return svc.getShapeStatsRestricted(
+                                batch, 0, 0, new int[] {0});
+                    }
+                }));
+            }
+            for (final Future<ShapeStats[]> result : results) {
+                for (final ShapeStats stats : result.get()) {
+                    parallel.put(stats.shapeId, stats);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        final long parallelTime = System.nanoTime() - start;
+
+        assertEquals(serial.size(), shapeCount);
+        assertEquals(parallel.size(), shapeCount);
+        for (final Map.Entry<Long, ShapeStats> entry : serial.entrySet()) {
+            final ShapeStats expected = entry.getValue();
+            final ShapeStats actual = parallel.get(entry.getKey());
+            assertEquals(actual.pointsCount[0], expected.pointsCount[0]);
+            assertEquals(actual.sum[0], expected.sum[0]);
+            assertEquals(actual.min[0], expected.min[0]);
+            assertEquals(actual.max[0], expected.max[0]);
+        }
+        log.info(String.format(
+                "shape stats for %d shapes: %d ms by id, %d ms by tile "
+                + "with %d workers", shapeCount, serialTime / 1000000,
+                parallelTime / 1000000, workers));
+    }
 }
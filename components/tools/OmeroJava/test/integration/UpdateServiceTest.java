@@ -13,6 +13,8 @@ import java.util.Set;
 import java.util.UUID;
 
 import ome.services.scripts.ScriptRepoHelper;
+import omero.RLong;
+import omero.RType;
 import omero.ServerError;
 import omero.ValidationException;
 import omero.api.IQueryPrx;
@@ -105,6 +107,7 @@ import omero.sys.ParametersI;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import omero.gateway.model.BooleanAnnotationData;
@@ -2121,4 +2124,63 @@ public class UpdateServiceTest extends AbstractServerTest {
         final OriginalFile file = (OriginalFile) iQuery.findByString("OriginalFile", "name", userDirectory);
         Assert.assertEquals(file.getRepo().getValue(), ScriptRepoHelper.SCRIPT_REPO);
     }
+
+    @DataProvider(name = "save benchmark link counts")
+    public Object[][] provideSaveBenchmarkLinkCounts() {
+        return new Object[][] { { 10000 }, { 100000 } };
+    }
+
+    /**
+     * Compares the throughput of the ways of saving many new annotations
+     * linked to one image, in batches: {@code saveAndReturnArray} which sends
+     * back the saved objects, {@code saveCollection} which sends back
+     * nothing and {@code saveAndReturnIds} which sends back only the ids.
+     * @param linkCount the number of annotations to link
+     * @throws Exception unexpected
+     */
+    @Test(groups = "benchmark", dataProvider = "save benchmark link counts",
+            timeOut = 3600000)
+    public void testSaveBenchmark(int linkCount) throws Exception {
+        final int batchSize = 1000;
+        final String[] modes = { "saveAndReturnArray", "saveCollection",
+                "saveAndReturnIds" };
+        for (final String mode : modes) {
+            final Image image = (Image) iUpdate.saveAndReturnObject(
+                    mmFactory.simpleImage());
+            final long start = System.nanoTime();
+            for (int saved = 0; saved < linkCount; saved += batchSize) {
+                final List<IObject> links = new ArrayList<IObject>(batchSize);
+                for (int i = saved; i < Math.min(saved + batchSize, linkCount);
+                        i++) {
+                    final CommentAnnotation comment = new CommentAnnotationI();
+                    comment.setTextValue(omero.rtypes.rstring("comment " + i));
+                    final ImageAnnotationLink link = new ImageAnnotationLinkI();
+                    link.setParent((Image) image.proxy());
+                    link.setChild(comment);
+                    links.add(link);
+                }
+                if ("saveAndReturnArray".equals(mode)) {
+                    Assert.assertEquals(
+                            iUpdate.saveAndReturnArray(links).size(),
+                            links.size());
+                } else if ("saveCollection".equals(mode)) {
+                    iUpdate.saveCollection(links);
+                } else {
+                    Assert.assertEquals(iUpdate.saveAndReturnIds(links).size(),
+                            links.size());
+                }
+            }
+            final long millis = (System.nanoTime() - start) / 1000000;
+            final ParametersI params = new ParametersI();
+            params.addId(image.getId().getValue());
+            final List<List<RType>> count = iQuery.projection(
+                    "SELECT COUNT(l) FROM ImageAnnotationLink l "
+                    + "WHERE l.parent.id = :id", params);
+            Assert.assertEquals(((RLong) count.get(0).get(0)).getValue(),
+                    linkCount);
+            log.info(String.format(
+                    "%s: %d links in %d ms, %.0f links/s", mode, linkCount,
+                    millis, linkCount * 1000.0 / Math.max(millis, 1)));
+        }
+    }
 }
@@ -24,6 +24,11 @@ import java.util.Random;
 import java.util.UUID;
 
 import omero.gateway.facility.TablesFacility;
+import omero.grid.Column;
+import omero.grid.Data;
+import omero.grid.StringColumn;
+import omero.grid.TablePrx;
+import omero.model.OriginalFileI;
 import omero.gateway.model.DatasetData;
 import omero.gateway.model.FileAnnotationData;
 import omero.gateway.model.ProjectData;
@@ -323,4 +328,47 @@ public class TablesFacilityTest extends GatewayTest {
             }
         }
     }
+
+    @Test(dependsOnMethods = { "testUpdateTable" })
+    /**
+     * Update single cells of one column, without reading or sending
+     * the other columns, and check that nothing else changed.
+     * @throws Exception
+     */
+    public void testUpdateCells() throws Exception {
+        long[] rows = new long[] { 0, 15, 25, nRows / 2, nRows - 1 };
+        String[] values = new String[rows.length];
+        for (int i = 0; i < rows.length; i++)
+            values[i] = "cell" + rows[i];
+
+        TablePrx table = gw.getSharedResources(rootCtx).openTable(
+                new OriginalFileI(original.getOriginalFileId(), false));
+        try {
+            StringColumn header = (StringColumn) table.getHeaders()[0];
+            Data data = new Data();
+            data.rowNumbers = rows;
+            data.columns = new Column[] { new StringColumn(header.name,
+                    header.description, header.size, values) };
+            table.update(data);
+        } finally {
+            table.close();
+        }
+
+        for (int i = 0; i < rows.length; i++) {
+            int r = (int) rows[i];
+            TableData td = tablesFacility.getTable(rootCtx,
+                    original.getOriginalFileId(), r, r);
+            Assert.assertEquals(td.getData()[0][0], values[i]);
+            for (int c = 1; c < nCols; c++) {
+                // columns 5 to 7 of rows 10 to 20 were set by testUpdateTable
+                if (r < 10 || r > 20 || c < 5 || c > 7)
+                    Assert.assertEquals(td.getData()[c][0],
+                            original.getData()[c][r]);
+            }
+        }
+
+        TableData td = tablesFacility.getTable(rootCtx,
+                original.getOriginalFileId(), 1, 1, 0);
+        Assert.assertEquals(td.getData()[0][0], original.getData()[0][1]);
+    }
 }
@@ -448,6 +448,31 @@ class TestTables(ITest):
         table.delete()
         table.close()
 
+    def testFloatArrayColumnWide(self):
+        """
+        Wide float32 array columns, e.g. per-cell embedding vectors
+        """
+        grid = self.client.sf.sharedResources()
+        repoMap = grid.repositories()
+        repoObj = repoMap.descriptions[0]
+        table = grid.newTable(repoObj.id.val, "/test")
+        assert table
+        farr = columns.FloatArrayColumnI('floatarr', 'desc', 256)
+        farr.values = [[float(r + x) / 4 for x in range(256)]
+                       for r in range(3)]
+
+        table.initialize([farr])
+        table.addData([farr])
+        assert 256 == table.getHeaders()[0].size
+        data = table.read([0], 1, 3)
+
+        testf = data.columns[0].values
+        assert 2 == len(testf)
+        assert farr.values[1] == testf[0]
+        assert farr.values[2] == testf[1]
+        table.delete()
+        table.close()
+
     def testAllColumnsSameTable(self):
         """
         Check all column types can coexist in the same table
@@ -658,6 +683,79 @@ class TestTables(ITest):
         table.delete()
         table.close()
 
+    @pytest.mark.parametrize('nclients', (1, 5, 20))
+    def testConcurrentReaders(self, nclients):
+        """
+        Open the same table from several sessions and read it from one
+        thread per session. Every read must return the stored values.
+        The read throughput is printed so that serialised access shows
+        up when comparing the client counts.
+        """
+        import threading
+        import time
+
+        nrows = 10000
+        grid = self.client.sf.sharedResources()
+        repoMap = grid.repositories()
+        repoObj = repoMap.descriptions[0]
+        table = grid.newTable(repoObj.id.val, "/testConcurrentReaders.h5")
+        assert table
+        lcol = columns.LongColumnI('longcol', 'long col')
+        dcol = columns.DoubleColumnI('doublecol', 'double col')
+        table.initialize([lcol, dcol])
+        lcol.values = list(range(nrows))
+        dcol.values = [x * 0.5 for x in range(nrows)]
+        table.addData([lcol, dcol])
+        ofile = table.getOriginalFile()
+        table.close()
+
+        clients = [self.new_client(user=self.user) for x in range(nclients)]
+        tables = [c.sf.sharedResources().openTable(ofile) for c in clients]
+        start_event = threading.Event()
+
+        class T(threading.Thread):
+
+            def __init__(self, table):
+                threading.Thread.__init__(self)
+                self.table = table
+                self.rows = 0
+                self.errors = []
+
+            def run(self):
+                start_event.wait()
+                try:
+                    for start in range(0, nrows, 1000):
+                        data = self.table.read([0, 1], start, start + 1000)
+                        values = data.columns[0].values
+                        assert values == list(range(start, start + 1000))
+                        assert data.columns[1].values[0] == start * 0.5
+                        self.rows += len(values)
+                except Exception as e:
+                    self.errors.append(e)
+
+        threads = [T(t) for t in tables]
+        try:
+            for t in threads:
+                t.start()
+            elapsed = time.time()
+            start_event.set()
+            for t in threads:
+                t.join()
+            elapsed = time.time() - elapsed
+        finally:
+            for t in tables:
+                t.close()
+
+        assert not [e for t in threads for e in t.errors]
+        total = sum([t.rows for t in threads])
+        assert total == nrows * nclients
+        print("%s readers: %s rows in %.2fs (%.0f rows/s)" % (
+            nclients, total, elapsed, total / max(elapsed, 1e-6)))
+
+        table = grid.openTable(ofile)
+        table.delete()
+        table.close()
+
     @pytest.mark.broken(ticket="unimplemented")
     def testReadOnlyFile(self):
         """
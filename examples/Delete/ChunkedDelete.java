@@ -0,0 +1,195 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import omero.ServerError;
+import omero.cmd.CmdCallbackI;
+import omero.cmd.Delete2;
+import omero.cmd.Delete2Response;
+import omero.cmd.ERR;
+import omero.cmd.HandlePrx;
+import omero.cmd.Response;
+
+/**
+ * Deletes a screen in bounded chunks rather than as one {@link Delete2}
+ * request. A screen with 100k images deleted at once is one transaction
+ * which holds its locks, and the whole graph in memory, until it completes.
+ *
+ * Here a dry run of the deletion of the screen first reports the filesets
+ * and images that a single request would delete: plates also linked to
+ * another screen, and filesets with images outside the screen, are not
+ * among them. Those filesets, then the remaining images, are deleted
+ * <code>chunkSize</code> at a time, each chunk being a separate request and
+ * so a separate transaction. The screen itself is then deleted by a final
+ * request which removes whatever remains of its graph: plates, wells,
+ * annotations and so on. If a chunk fails the images already deleted stay
+ * deleted, and running the deletion again resumes from there.
+ */
+public class ChunkedDelete {
+
+    /** The default number of filesets or images deleted per request. */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final String FILESET = "ome.model.fs.Fileset";
+
+    private static final String IMAGE = "ome.model.core.Image";
+
+    /**
+     * Notified as the deletion progresses.
+     */
+    public interface Progress {
+
+        /**
+         * Called after each chunk has been deleted.
+         * @param deleted the number of filesets and images deleted so far
+         * @param total the number of filesets and images to delete, less
+         * the images already deleted with their filesets
+         */
+        void chunk(int deleted, int total);
+
+        /**
+         * Called as the server reports the steps of the current request.
+         */
+        void step(int complete, int total);
+    }
+
+    private final omero.client client;
+
+    private final Progress progress;
+
+    public ChunkedDelete(omero.client client, Progress progress)
+            throws ServerError {
+        this.client = client;
+        this.progress = progress;
+    }
+
+    /**
+     * Deletes the screen <code>chunkSize</code> filesets or images at a time.
+     * @return the number of objects deleted, by class
+     */
+    public Map<String, Integer> deleteScreen(long screenId, int chunkSize)
+            throws Exception {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        final List<Long> screen = Collections.singletonList(screenId);
+        final Delete2Response dryRun = delete("Screen", screen, true);
+        final Set<Long> filesetIds = ids(dryRun, FILESET);
+        final Set<Long> imageIds = ids(dryRun, IMAGE);
+
+        final Map<String, Integer> deleted = new TreeMap<String, Integer>();
+        int total = filesetIds.size() + imageIds.size();
+        int done = 0;
+        for (List<Long> chunk : chunks(filesetIds, chunkSize)) {
+            final Delete2Response rsp = delete("Fileset", chunk, false);
+            count(deleted, rsp);
+            /* the images of the filesets are gone with them */
+            final Set<Long> gone = ids(rsp, IMAGE);
+            imageIds.removeAll(gone);
+            total -= gone.size();
+            done += chunk.size();
+            progress.chunk(done, total);
+        }
+        for (List<Long> chunk : chunks(imageIds, chunkSize)) {
+            count(deleted, delete("Image", chunk, false));
+            done += chunk.size();
+            progress.chunk(done, total);
+        }
+        count(deleted, delete("Screen", screen, false));
+        return deleted;
+    }
+
+    /**
+     * Deletes the given objects in one request, waiting for it to complete.
+     * @param dryRun if the deletion is only to be reported, not done
+     */
+    private Delete2Response delete(String type, List<Long> ids,
+            boolean dryRun) throws Exception {
+        final Delete2 request = new Delete2();
+        request.targetObjects = Collections.singletonMap(type, ids);
+        request.dryRun = dryRun;
+        final HandlePrx handle = client.getSession().submit(request);
+        final CmdCallbackI cb = new CmdCallbackI(client, handle) {
+            @Override
+            public void step(int complete, int total, Ice.Current __current) {
+                progress.step(complete, total);
+            }
+        };
+        try {
+            /* one chunk is bounded so a generous fixed wait is enough */
+            final Response rsp = cb.loop(600, 1000);
+            if (rsp instanceof ERR) {
+                final ERR err = (ERR) rsp;
+                throw new Exception(String.format(
+                        "Failed to delete %s %s: %s %s", type, ids,
+                        err.name, err.parameters));
+            }
+            return (Delete2Response) rsp;
+        } finally {
+            cb.close(true);
+        }
+    }
+
+    private static Set<Long> ids(Delete2Response rsp, String type) {
+        final Collection<Long> ids = rsp.deletedObjects.get(type);
+        return ids == null ? new LinkedHashSet<Long>()
+                : new LinkedHashSet<Long>(ids);
+    }
+
+    private static void count(Map<String, Integer> counts,
+            Delete2Response rsp) {
+        for (Map.Entry<String, List<Long>> entry
+                : rsp.deletedObjects.entrySet()) {
+            final Integer count = counts.get(entry.getKey());
+            counts.put(entry.getKey(), (count == null ? 0 : count)
+                    + entry.getValue().size());
+        }
+    }
+
+    private static List<List<Long>> chunks(Set<Long> ids, int chunkSize) {
+        final List<List<Long>> chunks = new ArrayList<List<Long>>();
+        List<Long> chunk = new ArrayList<Long>(chunkSize);
+        for (Long id : ids) {
+            chunk.add(id);
+            if (chunk.size() == chunkSize) {
+                chunks.add(chunk);
+                chunk = new ArrayList<Long>(chunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Deletes the screen whose id is given on the command line.
+     */
+    public static void main(String[] args) throws Exception {
+        final long screenId = Long.parseLong(args[0]);
+        omero.client c = new omero.client();
+        c.createSession();
+        try {
+            ChunkedDelete delete = new ChunkedDelete(c, new Progress() {
+                @Override
+                public void chunk(int deleted, int total) {
+                    System.out.println(deleted + "/" + total + " deleted");
+                }
+
+                @Override
+                public void step(int complete, int total) {
+                    System.out.print(".");
+                }
+            });
+            System.out.println(delete.deleteScreen(screenId,
+                    DEFAULT_CHUNK_SIZE));
+        } finally {
+            c.closeSession();
+        }
+    }
+}
@@ -0,0 +1,326 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import omero.RLong;
+import omero.RString;
+import omero.RType;
+import omero.ServerError;
+import omero.api.IQueryPrx;
+import omero.cmd.CmdCallbackI;
+import omero.cmd.Delete2;
+import omero.cmd.Delete2Response;
+import omero.cmd.ERR;
+import omero.cmd.HandlePrx;
+import omero.cmd.Response;
+import omero.grid.ManagedRepositoryPrxHelper;
+import omero.grid.RepositoryMap;
+import omero.model.OriginalFile;
+import omero.sys.ParametersI;
+
+/**
+ * Keeps a durable queue of the repository files left behind by
+ * {@link Delete2} requests and removes them in the background.
+ *
+ * Once a request has completed, the paths of the pixels, thumbnails and
+ * original files it deleted are computed from the response and those still
+ * present in the binary repository are appended to a queue file. The files
+ * imported into the managed repository are named by their original file
+ * rows, which are gone once the request has completed, so their paths must
+ * be looked up beforehand with {@link #getManagedFiles}, e.g. from a dry
+ * run of the same request. A pool of threads, limited to a given number of
+ * removals per second so as not to swamp a slow network file system, then
+ * drains the queue. Paths which could not be removed stay in the queue for
+ * the next run.
+ *
+ * This must run on the server host, as an administrator, since it works on
+ * the files under <code>omero.data.dir</code> directly.
+ */
+public class PendingFiles {
+
+    private final File dataDir;
+
+    private final File managedDir;
+
+    private final File queue;
+
+    /**
+     * @param dataDir the value of <code>omero.data.dir</code>
+     * @param managedDir the value of <code>omero.managed.dir</code>
+     * @param queue the file holding the pending paths, one per line
+     */
+    public PendingFiles(File dataDir, File managedDir, File queue) {
+        this.dataDir = dataDir;
+        this.managedDir = managedDir;
+        this.queue = queue;
+    }
+
+    /**
+     * Returns the path of a binary in the repository, e.g.
+     * <code>Pixels/Dir-001/Dir-234/1234567</code> for the pixels 1234567.
+     */
+    File getPath(String directory, long id) {
+        String path = Long.toString(id);
+        for (long remaining = id / 1000; remaining > 0; remaining /= 1000) {
+            path = String.format("Dir-%03d", remaining % 1000)
+                    + File.separator + path;
+        }
+        return new File(new File(dataDir, directory), path);
+    }
+
+    /**
+     * Returns the files in the managed repository of the given original
+     * files, by id. The other original files are not included.
+     * @param repo the UUID of the managed repository
+     */
+    public Map<Long, File> getManagedFiles(IQueryPrx query, String repo,
+            Collection<Long> fileIds) throws ServerError {
+        final Map<Long, File> files = new HashMap<Long, File>();
+        if (fileIds.isEmpty()) {
+            return files;
+        }
+        final ParametersI params = new ParametersI();
+        params.addIds(fileIds);
+        params.add("repo", omero.rtypes.rstring(repo));
+        for (List<RType> row : query.projection(
+                "SELECT o.id, o.path, o.name FROM OriginalFile o "
+                + "WHERE o.id IN (:ids) AND o.repo = :repo", params)) {
+            files.put(((RLong) row.get(0)).getValue(),
+                    new File(new File(managedDir,
+                            ((RString) row.get(1)).getValue()),
+                            ((RString) row.get(2)).getValue()));
+        }
+        return files;
+    }
+
+    /**
+     * Returns the repository files of the binaries deleted by a request.
+     * @param managed the files in the managed repository of the deleted
+     * original files, by id
+     */
+    List<File> getPaths(Delete2Response rsp, Map<Long, File> managed) {
+        final List<File> paths = new ArrayList<File>();
+        for (Map.Entry<String, List<Long>> entry
+                : rsp.deletedObjects.entrySet()) {
+            final String type = entry.getKey();
+            for (long id : entry.getValue()) {
+                if (type.endsWith("Pixels")) {
+                    final File pixels = getPath("Pixels", id);
+                    paths.add(pixels);
+                    paths.add(new File(pixels.getPath() + "_pyramid"));
+                } else if (type.endsWith("Thumbnail")) {
+                    paths.add(getPath("Thumbnails", id));
+                } else if (type.endsWith("OriginalFile")) {
+                    final File file = managed.get(id);
+                    paths.add(file == null ? getPath("Files", id) : file);
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Appends to the queue the files of the deleted binaries which are still
+     * present.
+     * @param managed as returned by {@link #getManagedFiles} before the
+     * request ran
+     * @return the number of files queued
+     */
+    public synchronized int enqueue(Delete2Response rsp,
+            Map<Long, File> managed) throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        for (File path : getPaths(rsp, managed)) {
+            if (path.exists()) {
+                lines.add(path.getPath());
+            }
+        }
+        if (!lines.isEmpty()) {
+            final List<String> all = new ArrayList<String>(read());
+            all.addAll(lines);
+            write(all);
+        }
+        return lines.size();
+    }
+
+    /**
+     * Returns the paths still queued.
+     */
+    public synchronized List<String> getPending() throws IOException {
+        return new ArrayList<String>(read());
+    }
+
+    /**
+     * Removes the queued files with the given number of threads and at most
+     * <code>perSecond</code> removals per second. The files which could not
+     * be removed are kept in the queue. The queue is only locked while it is
+     * read and rewritten, so files may be enqueued meanwhile.
+     * @return the paths still pending
+     */
+    public List<String> drain(int threads, final int perSecond)
+            throws IOException, InterruptedException {
+        if (threads < 1 || perSecond < 1) {
+            throw new IllegalArgumentException(
+                    "threads and perSecond must be positive");
+        }
+        final List<String> paths;
+        synchronized (this) {
+            paths = new ArrayList<String>(read());
+        }
+        final Set<String> removed = new LinkedHashSet<String>();
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final List<Future<Boolean>> removals =
+                new ArrayList<Future<Boolean>>();
+        final long start = System.nanoTime();
+        try {
+            for (int i = 0; i < paths.size(); i++) {
+                /* throttle the submissions */
+                final long due = start + i * 1000000000L / perSecond;
+                final long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                }
+                final File file = new File(paths.get(i));
+                removals.add(pool.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return file.delete() || !file.exists();
+                    }
+                }));
+            }
+            for (int i = 0; i < removals.size(); i++) {
+                try {
+                    if (removals.get(i).get()) {
+                        removed.add(paths.get(i));
+                    }
+                } catch (ExecutionException e) {
+                    System.err.println("Failed to remove " + paths.get(i)
+                            + ": " + e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdown();
+            if (!removed.isEmpty()) {
+                synchronized (this) {
+                    final Set<String> pending = read();
+                    pending.removeAll(removed);
+                    write(pending);
+                }
+            }
+        }
+        return getPending();
+    }
+
+    private Set<String> read() throws IOException {
+        if (!queue.exists()) {
+            return new LinkedHashSet<String>();
+        }
+        final Set<String> paths = new LinkedHashSet<String>();
+        for (String line : Files.readAllLines(queue.toPath(),
+                StandardCharsets.UTF_8)) {
+            if (!line.isEmpty()) {
+                paths.add(line);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Replaces the queue, through a temporary file so that it is never left
+     * half written.
+     */
+    private void write(Iterable<String> paths) throws IOException {
+        final File temp = new File(queue.getPath() + ".tmp");
+        Files.write(temp.toPath(), paths, StandardCharsets.UTF_8);
+        Files.move(temp.toPath(), queue.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Deletes the object given on the command line, e.g.
+     * <code>Image 1</code>, queues the files it left behind then drains the
+     * queue with four threads at 100 files per second.
+     */
+    public static void main(String[] args) throws Exception {
+        omero.client c = new omero.client();
+        c.createSession();
+        try {
+            final String dataDir = c.getSession().getConfigService()
+                    .getConfigValue("omero.data.dir");
+            final String managedDir = c.getSession().getConfigService()
+                    .getConfigValue("omero.managed.dir");
+            final PendingFiles files = new PendingFiles(new File(dataDir),
+                    new File(managedDir),
+                    new File(dataDir, ".pending-removals"));
+
+            /* the UUID of a repository is the hash of its description */
+            String repo = null;
+            final RepositoryMap repos =
+                    c.getSession().sharedResources().repositories();
+            for (int i = 0; i < repos.proxies.size(); i++) {
+                if (ManagedRepositoryPrxHelper.checkedCast(
+                        repos.proxies.get(i)) != null) {
+                    final OriginalFile description = repos.descriptions.get(i);
+                    if (description.getHash() != null) {
+                        repo = description.getHash().getValue();
+                    }
+                }
+            }
+
+            final Delete2 delete = new Delete2();
+            delete.targetObjects = Collections.singletonMap(args[0],
+                    Collections.singletonList(Long.parseLong(args[1])));
+            delete.dryRun = true;
+            Response rsp = run(c, delete);
+            if (rsp instanceof ERR) {
+                System.err.println("Delete failed: " + ((ERR) rsp).name);
+                return;
+            }
+            List<Long> fileIds = ((Delete2Response) rsp).deletedObjects.get(
+                    "ome.model.core.OriginalFile");
+            final Map<Long, File> managed = repo == null || fileIds == null
+                    ? Collections.<Long, File>emptyMap()
+                    : files.getManagedFiles(c.getSession().getQueryService(),
+                            repo, fileIds);
+
+            delete.dryRun = false;
+            rsp = run(c, delete);
+            if (rsp instanceof ERR) {
+                System.err.println("Delete failed: " + ((ERR) rsp).name);
+                return;
+            }
+            System.out.println(files.enqueue((Delete2Response) rsp, managed)
+                    + " files queued");
+            System.out.println(files.drain(4, 100).size()
+                    + " files still pending");
+        } finally {
+            c.closeSession();
+        }
+    }
+
+    private static Response run(omero.client c, Delete2 delete)
+            throws Exception {
+        final HandlePrx handle = c.getSession().submit(delete);
+        final CmdCallbackI cb = new CmdCallbackI(c, handle);
+        try {
+            return cb.loop(60, 1000);
+        } finally {
+            cb.close(true);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import omero.cmd.Chgrp2;
+import omero.cmd.Chgrp2Response;
+import omero.cmd.Chown2Response;
+import omero.cmd.CmdCallbackI;
+import omero.cmd.Delete2Response;
+import omero.cmd.DiskUsage2;
+import omero.cmd.DiskUsage2Response;
+import omero.cmd.ERR;
+import omero.cmd.GraphModify2;
+import omero.cmd.HandlePrx;
+import omero.cmd.Response;
+
+/**
+ * Estimates what a graph request such as {@link Chgrp2} would touch
+ * before running it, so that large moves can be scheduled off-peak.
+ *
+ * The request is first run as a dry run, which traverses the graph and
+ * reports the objects that would be included without changing anything.
+ * {@link DiskUsage2} is then run on the same targets for the number and
+ * size of the files involved. The time taken by the dry run gives a lower
+ * bound of the time the actual request will take.
+ */
+public class EstimateCost {
+
+    /**
+     * The outcome of an estimate.
+     */
+    public static class Estimate {
+
+        /** The number of objects included, by class. */
+        public final Map<String, Integer> counts =
+                new TreeMap<String, Integer>();
+
+        /** The number of files involved. */
+        public long files;
+
+        /** The size of the files involved, in bytes. */
+        public long bytes;
+
+        /** How long the dry run took, in milliseconds. */
+        public long millis;
+
+        @Override
+        public String toString() {
+            return String.format("%s, %d files, %d bytes, dry run in %d ms",
+                    counts, files, bytes, millis);
+        }
+    }
+
+    private final omero.client client;
+
+    public EstimateCost(omero.client client) {
+        this.client = client;
+    }
+
+    /**
+     * Estimates the cost of the request, which is not modified.
+     */
+    public Estimate estimate(GraphModify2 request) throws Exception {
+        final Estimate estimate = new Estimate();
+        final GraphModify2 dryRun = (GraphModify2) request.clone();
+        dryRun.dryRun = true;
+        final long start = System.currentTimeMillis();
+        final Response rsp = run(dryRun);
+        estimate.millis = System.currentTimeMillis() - start;
+        Map<String, List<Long>> included = Collections.emptyMap();
+        if (rsp instanceof Chgrp2Response) {
+            included = ((Chgrp2Response) rsp).includedObjects;
+        } else if (rsp instanceof Chown2Response) {
+            included = ((Chown2Response) rsp).includedObjects;
+        } else if (rsp instanceof Delete2Response) {
+            included = ((Delete2Response) rsp).deletedObjects;
+        }
+        for (Map.Entry<String, List<Long>> entry : included.entrySet()) {
+            estimate.counts.put(entry.getKey(), entry.getValue().size());
+        }
+
+        final DiskUsage2 usage = new DiskUsage2();
+        usage.targetObjects = request.targetObjects;
+        final DiskUsage2Response usageRsp = (DiskUsage2Response) run(usage);
+        for (Map<String, Long> bytes : usageRsp.bytesUsedByReferer.values()) {
+            for (long value : bytes.values()) {
+                estimate.bytes += value;
+            }
+        }
+        for (Map<String, Integer> files
+                : usageRsp.fileCountByReferer.values()) {
+            for (int value : files.values()) {
+                estimate.files += value;
+            }
+        }
+        return estimate;
+    }
+
+    private Response run(omero.cmd.Request request) throws Exception {
+        final HandlePrx handle = client.getSession().submit(request);
+        final CmdCallbackI cb = new CmdCallbackI(client, handle);
+        try {
+            final Response rsp = cb.loop(600, 1000);
+            if (rsp instanceof ERR) {
+                final ERR err = (ERR) rsp;
+                throw new Exception(String.format("%s failed: %s %s",
+                        request.getClass().getSimpleName(), err.name,
+                        err.parameters));
+            }
+            return rsp;
+        } finally {
+            cb.close(true);
+        }
+    }
+
+    /**
+     * Estimates moving the object given on the command line to a group,
+     * e.g. <code>Screen 1 5</code> to move the screen 1 to the group 5.
+     */
+    public static void main(String[] args) throws Exception {
+        omero.client c = new omero.client();
+        c.createSession();
+        try {
+            final Chgrp2 chgrp = new Chgrp2();
+            chgrp.targetObjects = Collections.singletonMap(args[0],
+                    Collections.singletonList(Long.parseLong(args[1])));
+            chgrp.groupId = Long.parseLong(args[2]);
+            System.out.println(new EstimateCost(c).estimate(chgrp));
+        } finally {
+            c.closeSession();
+        }
+    }
+}
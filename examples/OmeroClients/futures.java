@@ -0,0 +1,88 @@
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import omero.RType;
+import omero.api.IQueryPrx;
+import omero.api.IRoiPrx;
+import omero.api.RoiResult;
+import omero.api.ServiceFactoryPrx;
+import omero.model.IObject;
+import omero.sys.ParametersI;
+
+/**
+ * Turns the asynchronous begin_/end_ form of any service method into a
+ * {@link CompletableFuture}. The future is completed by Ice when the reply
+ * arrives, so many calls may be outstanding at once without a thread
+ * waiting on each of them.
+ */
+public class futures {
+
+    /**
+     * Reads the result of a call, i.e. calls the end_ method.
+     */
+    public interface End<T> {
+        T end(Ice.AsyncResult result) throws Exception;
+    }
+
+    /**
+     * Starts a call and returns its future result. For example,
+     * <code>call(cb -> query.begin_get("Image", 1L, cb), query::end_get)</code>.
+     * @param begin calls the begin_ method with the given callback
+     * @param end calls the end_ method
+     */
+    public static <T> CompletableFuture<T> call(
+            Function<Ice.Callback, Ice.AsyncResult> begin, final End<T> end) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            begin.apply(new Ice.Callback() {
+                @Override
+                public void completed(Ice.AsyncResult result) {
+                    try {
+                        future.complete(end.end(result));
+                    } catch (Exception e) {
+                        future.completeExceptionally(e);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            /* e.g. the communicator is destroyed */
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public static void main(String args[]) throws Exception {
+
+        omero.client client = new omero.client(args);
+        try {
+            ServiceFactoryPrx sf = client.createSession();
+            final IQueryPrx query = sf.getQueryService();
+            final IRoiPrx roi = sf.getRoiService();
+            final long imageId = 1L;
+
+            // The three calls are sent at once.
+            CompletableFuture<IObject> image = call(
+                    cb -> query.begin_get("Image", imageId, cb),
+                    query::end_get);
+            CompletableFuture<List<List<RType>>> datasets = call(
+                    cb -> query.begin_projection(
+                            "select l.parent.id from DatasetImageLink l "
+                            + "where l.child.id = :id",
+                            new ParametersI().addId(imageId), cb),
+                    query::end_projection);
+            CompletableFuture<RoiResult> rois = call(
+                    cb -> roi.begin_findByImage(imageId, null, cb),
+                    roi::end_findByImage);
+
+            CompletableFuture.allOf(image, datasets, rois).join();
+            System.out.println(String.format(
+                    "Image %s is in %d datasets and has %d ROIs",
+                    image.get().getId().getValue(), datasets.get().size(),
+                    rois.get().rois.size()));
+        } finally {
+            client.closeSession();
+        }
+    }
+
+}
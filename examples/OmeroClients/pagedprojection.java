@@ -0,0 +1,107 @@
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import omero.RLong;
+import omero.RType;
+import omero.ServerError;
+import omero.api.IQueryPrx;
+import omero.api.ServiceFactoryPrx;
+import omero.sys.Filter;
+import omero.sys.ParametersI;
+
+/**
+ * Streams the rows of a large projection page by page, so that no message
+ * holds the whole result and only one page is in memory at a time.
+ *
+ * The query must select an id first, order by it and only return the rows
+ * after the id given as <code>:after</code>. Each page then starts where
+ * the previous one ended, using the index on the id, rather than skipping
+ * an ever larger offset.
+ */
+public class pagedprojection {
+
+    /**
+     * Returns the rows of the projection, <code>pageSize</code> at a time.
+     * The filter and the options of the parameters are kept for every page,
+     * except for the offset and the limit which are replaced. The
+     * parameters are not modified.
+     */
+    public static Stream<List<RType>> stream(final IQueryPrx q,
+            final String query, final ParametersI params, final int pageSize) {
+        final Iterator<List<RType>> rows = new Iterator<List<RType>>() {
+
+            private List<List<RType>> page;
+
+            private int index;
+
+            private long after = Long.MIN_VALUE;
+
+            private boolean last;
+
+            @Override
+            public boolean hasNext() {
+                if (page != null && index < page.size()) {
+                    return true;
+                }
+                if (last) {
+                    return false;
+                }
+                final ParametersI p = new ParametersI();
+                p.map.putAll(params.map);
+                if (params.theFilter != null) {
+                    p.theFilter = (Filter) params.theFilter.clone();
+                }
+                p.theOptions = params.theOptions;
+                p.addLong("after", after);
+                p.page(0, pageSize);
+                try {
+                    page = q.projection(query, p);
+                } catch (ServerError se) {
+                    throw new RuntimeException(se);
+                }
+                index = 0;
+                last = page.size() < pageSize;
+                if (page.isEmpty()) {
+                    return false;
+                }
+                after = ((RLong) page.get(page.size() - 1).get(0)).getValue();
+                return true;
+            }
+
+            @Override
+            public List<RType> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(index++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    public static void main(String args[]) throws Exception {
+
+        omero.client client = new omero.client(args);
+        try {
+            ServiceFactoryPrx sf = client.createSession();
+            IQueryPrx q = sf.getQueryService();
+
+            String query_string = "select i.id, i.name from Image i "
+                    + "where i.id > :after order by i.id";
+
+            long count = stream(q, query_string, new ParametersI(), 10000)
+                    .filter(row -> row.get(1) != null)
+                    .count();
+            System.out.println(count + " images");
+        } finally {
+            client.closeSession();
+        }
+    }
+
+}
@@ -1,16 +1,26 @@
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import omero.ServerError;
 import omero.api.IAdminPrx;
 import omero.api.IMetadataPrx;
 import omero.api.ServiceFactoryPrx;
 import omero.constants.namespaces.NSMEASUREMENT;
+import omero.grid.Column;
 import omero.grid.SharedResourcesPrx;
 import omero.grid.TablePrx;
 import omero.model.FileAnnotation;
 import omero.model.IObject;
+import omero.model.OriginalFile;
 
 /**
  * Take an image id and find any attached measurements. If no image id is
@@ -18,6 +28,27 @@ import omero.model.IObject;
  */
 public class FindMeasurements {
 
+    /** Maximum number of tables which are opened at the same time. */
+    static final int MAX_OPEN_TABLES = 8;
+
+    /**
+     * Headers and row count of one measurement table.
+     */
+    static class TableSummary {
+
+        final long fileId;
+
+        final Column[] headers;
+
+        final long rows;
+
+        TableSummary(long fileId, Column[] headers, long rows) {
+            this.fileId = fileId;
+            this.headers = headers;
+            this.rows = rows;
+        }
+    }
+
     /**
      * The main method takes an optional long from the command line which should
      * be the id of a valid Image for the current user. If no id is provided, a
@@ -71,18 +102,74 @@ public class FindMeasurements {
             return;
         }
 
+        final List<OriginalFile> files = new ArrayList<OriginalFile>();
         for (IObject obj : annotations.get(imageId)) {
             FileAnnotation ann = (FileAnnotation) obj;
             if (NSMEASUREMENT.value.equals(ann.getNs().getValue())) {
-                TablePrx table = resources.openTable(ann.getFile());
-                try {
-                    System.out.println(String.format("Found measurement file %s: rows=%s", table
-                            .getOriginalFile().getId().getValue(),
-                            table.getNumberOfRows()));
-                } finally {
-                    table.close();
-                }
+                files.add(ann.getFile());
             }
         }
+
+        for (TableSummary summary : summarize(resources, files,
+                MAX_OPEN_TABLES).values()) {
+            System.out.println(String.format(
+                    "Found measurement file %s: columns=%s rows=%s",
+                    summary.fileId, summary.headers.length, summary.rows));
+        }
+    }
+
+    /**
+     * Opens the given tables with at most <code>parallelism</code> of them
+     * open at the same time, and returns their headers and row counts
+     * keyed by original file id, in the order of <code>files</code>.
+     */
+    static Map<Long, TableSummary> summarize(
+            final SharedResourcesPrx resources,
+            Collection<OriginalFile> files, int parallelism)
+            throws ServerError {
+
+        final Map<Long, TableSummary> summaries =
+                new LinkedHashMap<Long, TableSummary>();
+        if (files.isEmpty()) {
+            return summaries;
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(parallelism, files.size())));
+        try {
+            final List<Future<TableSummary>> futures =
+                    new ArrayList<Future<TableSummary>>();
+            for (final OriginalFile file : files) {
+                futures.add(pool.submit(new Callable<TableSummary>() {
+                    @Override
+                    public TableSummary call() throws ServerError {
+                        TablePrx table = resources.openTable(file);
+                        try {
+                            return new TableSummary(table.getOriginalFile()
+                                    .getId().getValue(), table.getHeaders(),
+                                    table.getNumberOfRows());
+                        } finally {
+                            table.close();
+                        }
+                    }
+                }));
+            }
+            for (Future<TableSummary> future : futures) {
+                TableSummary summary = future.get();
+                summaries.put(summary.fileId, summary);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new omero.InternalException(null, null,
+                    "Interrupted while opening tables");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ServerError) {
+                throw (ServerError) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return summaries;
     }
 }
@@ -0,0 +1,137 @@
+import omero.ServerError;
+import omero.api.ServiceFactoryPrx;
+import omero.grid.Column;
+import omero.grid.Data;
+import omero.grid.FloatArrayColumn;
+import omero.grid.SharedResourcesPrx;
+import omero.grid.TablePrx;
+
+/**
+ * Fixed-width float32 vectors, e.g. per-cell embeddings, held as one flat
+ * primitive array: the values of row <code>r</code> are
+ * <code>values[r * stride]</code> to <code>values[(r + 1) * stride - 1]</code>.
+ *
+ * The vectors are stored in a {@link FloatArrayColumn}, i.e. as 4 bytes per
+ * element rather than the 8 bytes of a DoubleArrayColumn, and are never boxed
+ * on their way in or out of the table.
+ */
+public class FlatFloatArrays {
+
+    /** The number of floats in each row. */
+    public final int stride;
+
+    /** The values of all the rows, one after the other. */
+    public final float[] values;
+
+    /**
+     * Creates an empty block of <code>rows</code> rows.
+     */
+    public FlatFloatArrays(int rows, int stride) {
+        this(new float[rows * stride], stride);
+    }
+
+    /**
+     * Wraps the given values, whose length must be a multiple of the stride.
+     */
+    public FlatFloatArrays(float[] values, int stride) {
+        if (stride < 1 || values.length % stride != 0) {
+            throw new IllegalArgumentException("Length " + values.length
+                    + " is not a multiple of the stride " + stride);
+        }
+        this.stride = stride;
+        this.values = values;
+    }
+
+    /** Returns the number of rows. */
+    public int getRows() {
+        return values.length / stride;
+    }
+
+    /** Returns element <code>i</code> of row <code>row</code>. */
+    public float get(int row, int i) {
+        return values[row * stride + i];
+    }
+
+    /** Sets element <code>i</code> of row <code>row</code>. */
+    public void set(int row, int i, float value) {
+        values[row * stride + i] = value;
+    }
+
+    /**
+     * Creates an empty column suitable for
+     * {@link TablePrx#initialize(Column[])}.
+     */
+    public static FloatArrayColumn header(String name, String description,
+            int stride) {
+        return new FloatArrayColumn(name, description, stride, null);
+    }
+
+    /**
+     * Copies the rows into a column suitable for
+     * {@link TablePrx#addData(Column[])}.
+     */
+    public FloatArrayColumn toColumn(String name, String description) {
+        int rows = getRows();
+        float[][] v = new float[rows][];
+        for (int r = 0; r < rows; r++) {
+            v[r] = new float[stride];
+            System.arraycopy(values, r * stride, v[r], 0, stride);
+        }
+        return new FloatArrayColumn(name, description, stride, v);
+    }
+
+    /**
+     * Reads the rows <code>start</code> (inclusive) to <code>stop</code>
+     * (exclusive) of a {@link FloatArrayColumn} into a flat array.
+     */
+    public static FlatFloatArrays read(TablePrx table, int column,
+            long start, long stop) throws ServerError {
+        Data data = table.read(new long[] { column }, start, stop);
+        if (!(data.columns[0] instanceof FloatArrayColumn)) {
+            throw new omero.ApiUsageException(null, null, "Column " + column
+                    + " is not a FloatArrayColumn");
+        }
+        FloatArrayColumn col = (FloatArrayColumn) data.columns[0];
+        FlatFloatArrays flat = new FlatFloatArrays(col.values.length,
+                col.size);
+        for (int r = 0; r < col.values.length; r++) {
+            System.arraycopy(col.values[r], 0, flat.values, r * col.size,
+                    col.size);
+        }
+        return flat;
+    }
+
+    /**
+     * Stores 1000 random 256-float vectors in a new table and reads them
+     * back.
+     */
+    public static void main(String[] args) throws Exception {
+        omero.client client = new omero.client();
+        ServiceFactoryPrx factory = client.createSession();
+        try {
+            SharedResourcesPrx resources = factory.sharedResources();
+            TablePrx table = resources.newTable(1, "/examples/embeddings.h5");
+            try {
+                table.initialize(new Column[] {
+                        header("embedding", "cell embedding", 256) });
+
+                FlatFloatArrays embeddings = new FlatFloatArrays(1000, 256);
+                java.util.Random random = new java.util.Random();
+                for (int i = 0; i < embeddings.values.length; i++) {
+                    embeddings.values[i] = random.nextFloat();
+                }
+                table.addData(new Column[] {
+                        embeddings.toColumn("embedding", "cell embedding") });
+
+                FlatFloatArrays read = read(table, 0, 0, 1000);
+                System.out.println(String.format("Read %s rows of %s floats",
+                        read.getRows(), read.stride));
+            } finally {
+                table.close();
+            }
+        } finally {
+            client.closeSession();
+            System.exit(0);
+        }
+    }
+}
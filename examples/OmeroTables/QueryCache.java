@@ -0,0 +1,253 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import omero.RType;
+import omero.ServerError;
+import omero.api.ServiceFactoryPrx;
+import omero.grid.Column;
+import omero.grid.Data;
+import omero.grid.TablePrx;
+import omero.model.OriginalFile;
+import omero.model.OriginalFileI;
+
+/**
+ * Opt-in cache for the row lists returned by
+ * {@link TablePrx#getWhereList(String, Map, long, long, long)}. Entries are
+ * keyed on the table's original file id and version, the normalized
+ * condition, its variables and the row range. The cache holds at most
+ * <code>maxEntries</code> results, evicting the least recently used one.
+ *
+ * Writes made through {@link #addData(long, Column[])} and
+ * {@link #update(long, Data)} invalidate the entries of the table straight
+ * away. Writes made by other clients are noticed through the version of the
+ * original file, which the server updates when the table is closed.
+ */
+public class QueryCache {
+
+    /** The default maximum number of cached results. */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final ServiceFactoryPrx factory;
+
+    private final Map<Key, long[]> results;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * Creates a cache holding at most {@link #DEFAULT_MAX_ENTRIES} results.
+     */
+    public QueryCache(ServiceFactoryPrx factory) {
+        this(factory, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Creates a cache holding at most <code>maxEntries</code> results.
+     */
+    public QueryCache(ServiceFactoryPrx factory, final int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.factory = factory;
+        this.results = new LinkedHashMap<Key, long[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, long[]> e) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the rows of the table matching the condition, from the cache
+     * if the same query was already made on the same version of the table.
+     */
+    public long[] getWhereList(long fileId, String condition,
+            Map<String, RType> variables, long start, long stop, long step)
+            throws ServerError {
+        Key key = new Key(fileId, version(fileId), normalize(condition),
+                variables, start, stop, step);
+        synchronized (results) {
+            long[] rows = results.get(key);
+            if (rows != null) {
+                hits++;
+                return rows.clone();
+            }
+            misses++;
+        }
+
+        long[] rows;
+        TablePrx table = open(fileId);
+        try {
+            rows = table.getWhereList(condition, variables, start, stop,
+                    step);
+        } finally {
+            table.close();
+        }
+        synchronized (results) {
+            results.put(key, rows.clone());
+        }
+        return rows;
+    }
+
+    /**
+     * Appends the data to the table and drops its cached results.
+     */
+    public void addData(long fileId, Column[] cols) throws ServerError {
+        TablePrx table = open(fileId);
+        try {
+            table.addData(cols);
+        } finally {
+            invalidate(fileId);
+            table.close();
+        }
+    }
+
+    /**
+     * Updates the table and drops its cached results.
+     */
+    public void update(long fileId, Data data) throws ServerError {
+        TablePrx table = open(fileId);
+        try {
+            table.update(data);
+        } finally {
+            invalidate(fileId);
+            table.close();
+        }
+    }
+
+    /**
+     * Drops all the cached results of the given table.
+     */
+    public void invalidate(long fileId) {
+        synchronized (results) {
+            Iterator<Key> it = results.keySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().fileId == fileId) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all the cached results.
+     */
+    public void clear() {
+        synchronized (results) {
+            results.clear();
+        }
+    }
+
+    /** Returns the number of queries answered from the cache. */
+    public long getHits() {
+        synchronized (results) {
+            return hits;
+        }
+    }
+
+    /** Returns the number of queries sent to the server. */
+    public long getMisses() {
+        synchronized (results) {
+            return misses;
+        }
+    }
+
+    private TablePrx open(long fileId) throws ServerError {
+        return factory.sharedResources().openTable(
+                new OriginalFileI(fileId, false));
+    }
+
+    /**
+     * Returns the id of the last event which modified the original file,
+     * the server updating the file when a modified table is closed.
+     */
+    private long version(long fileId) throws ServerError {
+        OriginalFile file = (OriginalFile) factory.getQueryService().get(
+                "OriginalFile", fileId);
+        return file.getDetails().getUpdateEvent().getId().getValue();
+    }
+
+    /**
+     * Removes the whitespace which is not part of a quoted string, so that
+     * conditions only differing in their layout share an entry.
+     */
+    static String normalize(String condition) {
+        StringBuilder sb = new StringBuilder(condition.length());
+        char quote = 0;
+        for (char c : condition.toCharArray()) {
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (Character.isWhitespace(c)) {
+                continue;
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Identifies one query on one version of a table.
+     */
+    private static final class Key {
+
+        final long fileId;
+
+        final long version;
+
+        final String condition;
+
+        final Map<String, Object> variables;
+
+        final long[] range;
+
+        Key(long fileId, long version, String condition,
+                Map<String, RType> variables, long start, long stop,
+                long step) {
+            this.fileId = fileId;
+            this.version = version;
+            this.condition = condition;
+            if (variables == null || variables.isEmpty()) {
+                this.variables = Collections.emptyMap();
+            } else {
+                Map<String, Object> values = new TreeMap<String, Object>();
+                for (Map.Entry<String, RType> e : variables.entrySet()) {
+                    values.put(e.getKey(), omero.rtypes.unwrap(e.getValue()));
+                }
+                this.variables = values;
+            }
+            this.range = new long[] { start, stop, step };
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return fileId == k.fileId && version == k.version
+                    && condition.equals(k.condition)
+                    && variables.equals(k.variables)
+                    && Arrays.equals(range, k.range);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = (int) (fileId ^ (fileId >>> 32));
+            h = 31 * h + (int) (version ^ (version >>> 32));
+            h = 31 * h + condition.hashCode();
+            h = 31 * h + variables.hashCode();
+            return 31 * h + Arrays.hashCode(range);
+        }
+    }
+}
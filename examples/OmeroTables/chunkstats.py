@@ -0,0 +1,217 @@
+#!/usr/bin/env python
+# -*- coding: utf-8 -*-
+
+#
+# Copyright (C) 2026 University of Dundee & Open Microscopy Environment.
+#                    All Rights Reserved.
+# Use is subject to license terms supplied in LICENSE.txt
+#
+
+"""
+Per-chunk min/max summaries for the numeric columns of an OMERO.table.
+
+The summaries are kept in the user metadata of the table so that any
+client can use them: a range query on a summarised column only issues
+getWhereList calls for the chunks whose [min, max] interval can match,
+instead of scanning the whole table.
+
+The number of rows summarised is stored alongside the summaries. Rows
+appended without add_data() are past that count and are always scanned,
+but rows changed by calling table.update() directly cannot be detected:
+call summarise() again after such an update.
+
+    summarise(table, chunk_size)     compute and store all summaries
+    add_data(table, cols)            addData and refresh the trailing chunks
+    update(table, data)              update and refresh the touched chunks
+    get_info(table)                  summaries as {column: [(min, max)]}
+    where(table, column, low, high)  matching row numbers, chunk-pruned
+"""
+from __future__ import print_function
+
+from builtins import range
+import json
+
+import omero
+import omero.clients
+from omero import columns
+from omero.rtypes import rint, rlong, rstring, unwrap
+
+CHUNK_SIZE_KEY = "chunkstats.size"
+ROWS_KEY = "chunkstats.rows"
+COLUMN_KEY = "chunkstats.column."
+NUMERIC = (omero.grid.LongColumn, omero.grid.DoubleColumn)
+
+
+def _numeric_headers(table):
+    return [h for h in table.getHeaders() if isinstance(h, NUMERIC)]
+
+
+def _chunk_size(table):
+    size = table.getMetadata(CHUNK_SIZE_KEY)
+    if size is None:
+        raise omero.ApiUsageException(
+            None, None, "Table has no chunk summaries, call summarise()")
+    return unwrap(size)
+
+
+def _summarised_rows(table):
+    rows = table.getMetadata(ROWS_KEY)
+    if rows is None:
+        raise omero.ApiUsageException(
+            None, None, "Table has no chunk summaries, call summarise()")
+    return unwrap(rows)
+
+
+def _summarise_chunks(table, size, first_chunk):
+    """
+    Recomputes the summaries of every chunk from first_chunk to the end
+    of the table. Only the numeric columns are read.
+    """
+    headers = table.getHeaders()
+    indexes = [i for i, h in enumerate(headers) if isinstance(h, NUMERIC)]
+    rows = table.getNumberOfRows()
+    meta = {}
+    for i in indexes:
+        key = COLUMN_KEY + headers[i].name
+        old = table.getMetadata(key)
+        meta[key] = json.loads(unwrap(old))[:first_chunk] if old else []
+
+    for start in range(first_chunk * size, rows, size):
+        data = table.read(indexes, start, min(start + size, rows))
+        for col in data.columns:
+            values = col.values
+            meta[COLUMN_KEY + col.name].append(
+                [min(values), max(values)] if values else None)
+
+    for key, chunks in meta.items():
+        table.setMetadata(key, rstring(json.dumps(chunks)))
+    table.setMetadata(ROWS_KEY, rlong(rows))
+
+
+def summarise(table, chunk_size=10000):
+    """
+    Computes the min/max summary of every chunk of chunk_size rows for all
+    numeric columns of the table and stores them in the table metadata.
+    """
+    if chunk_size < 1:
+        raise omero.ApiUsageException(
+            None, None, "chunk_size must be positive")
+    table.setMetadata(CHUNK_SIZE_KEY, rint(chunk_size))
+    for h in _numeric_headers(table):
+        table.setMetadata(COLUMN_KEY + h.name, rstring("[]"))
+    _summarise_chunks(table, chunk_size, 0)
+
+
+def add_data(table, cols):
+    """
+    Appends the columns to the table and refreshes the summary of the
+    last summarised, possibly partial, chunk and of every chunk after it.
+    """
+    size = _chunk_size(table)
+    first_chunk = _summarised_rows(table) // size
+    table.addData(cols)
+    _summarise_chunks(table, size, first_chunk)
+
+
+def update(table, data):
+    """
+    Updates the table and refreshes the summaries. Rows are not bounded
+    by an update, so every chunk from the lowest row touched is rescanned,
+    as is any row appended since the last summary.
+    """
+    size = _chunk_size(table)
+    first_chunk = _summarised_rows(table) // size
+    table.update(data)
+    if data.rowNumbers:
+        first_chunk = min(first_chunk, min(data.rowNumbers) // size)
+    _summarise_chunks(table, size, first_chunk)
+
+
+def get_info(table):
+    """
+    Returns the stored summaries as a dictionary mapping each numeric
+    column name to a list of (min, max) tuples, one per chunk.
+    """
+    meta = unwrap(table.getAllMetadata())
+    info = {}
+    for key, value in meta.items():
+        if key.startswith(COLUMN_KEY):
+            info[key[len(COLUMN_KEY):]] = [
+                tuple(c) if c else None for c in json.loads(value)]
+    return info
+
+
+def where(table, column, low=None, high=None):
+    """
+    Returns the rows for which low <= column <= high. Either bound may
+    be None. getWhereList is only called for the chunks whose summary
+    overlaps the requested range, consecutive chunks being merged into
+    a single call. Rows appended since the last summary are always
+    scanned.
+    """
+    size = _chunk_size(table)
+    summary = table.getMetadata(COLUMN_KEY + column)
+    if summary is None:
+        raise omero.ApiUsageException(
+            None, None, "No chunk summary for column %s" % column)
+    chunks = json.loads(unwrap(summary))
+
+    terms = []
+    variables = {}
+    if low is not None:
+        terms.append("(%s>=low)" % column)
+        variables["low"] = omero.rtypes.wrap(low)
+    if high is not None:
+        terms.append("(%s<=high)" % column)
+        variables["high"] = omero.rtypes.wrap(high)
+    condition = "&".join(terms) or "(%s==%s)" % (column, column)
+
+    def overlaps(chunk):
+        if chunk is None:
+            return False
+        if low is not None and chunk[1] < low:
+            return False
+        if high is not None and chunk[0] > high:
+            return False
+        return True
+
+    rows = table.getNumberOfRows()
+    summarised = min(_summarised_rows(table), rows)
+    result = []
+    index = 0
+    while index < len(chunks):
+        if not overlaps(chunks[index]):
+            index += 1
+            continue
+        start = index
+        while index < len(chunks) and overlaps(chunks[index]):
+            index += 1
+        result.extend(table.getWhereList(
+            condition, variables, start * size,
+            min(index * size, summarised), 0))
+    if summarised < rows:
+        result.extend(table.getWhereList(
+            condition, variables, summarised, rows, 0))
+    return result
+
+
+if __name__ == "__main__":
+    c = omero.client()
+    s = c.createSession()
+    try:
+        r = s.sharedResources()
+        m = r.repositories()
+        i = m.descriptions[0].id.val
+        t = r.newTable(i, "/chunkstats.h5")
+        lc = columns.LongColumnI('value', 'desc', list(range(100)))
+        t.initialize([lc])
+        t.addData([lc])
+        summarise(t, 10)
+        lc.values = list(range(100, 125))
+        add_data(t, [lc])
+        print(get_info(t)['value'])
+        print(where(t, 'value', 42, 51))
+        t.delete()
+        t.close()
+    finally:
+        c.closeSession()
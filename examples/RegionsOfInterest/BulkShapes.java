@@ -0,0 +1,315 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import omero.ServerError;
+import omero.api.IUpdatePrx;
+import omero.api.ServiceFactoryPrx;
+import omero.model.Ellipse;
+import omero.model.EllipseI;
+import omero.model.IObject;
+import omero.model.ImageI;
+import omero.model.Line;
+import omero.model.LineI;
+import omero.model.Mask;
+import omero.model.MaskI;
+import omero.model.Point;
+import omero.model.PointI;
+import omero.model.Polygon;
+import omero.model.PolygonI;
+import omero.model.Polyline;
+import omero.model.PolylineI;
+import omero.model.Rectangle;
+import omero.model.RectangleI;
+import omero.model.Roi;
+import omero.model.RoiI;
+import omero.model.Shape;
+
+/**
+ * Saves large numbers of shapes, e.g. the output of a segmentation, which
+ * are held as compact arrays rather than as model objects:
+ *
+ * <ul>
+ * <li><code>types[i]</code> is one of the <code>TYPE_</code> constants,</li>
+ * <li><code>coords[4*i]</code> to <code>coords[4*i+3]</code> are x, y, width
+ * and height for a rectangle or a mask, x, y, radiusX and radiusY for an
+ * ellipse, x1, y1, x2 and y2 for a line, and x, y (the other two being
+ * ignored) for a point, and are ignored for a polygon or a polyline,</li>
+ * <li><code>points[pointOffsets[i]]</code> up to
+ * <code>points[pointOffsets[i+1]]</code> are the x, y pairs of the vertices
+ * of a polygon or a polyline,</li>
+ * <li><code>masks[maskOffsets[i]]</code> up to
+ * <code>masks[maskOffsets[i+1]]</code> are the bits of a mask, packed most
+ * significant bit first,</li>
+ * <li><code>zct[3*i]</code> to <code>zct[3*i+2]</code> are the Z, C and T of
+ * the shape, a negative value leaving it unset.</li>
+ * </ul>
+ *
+ * The shapes are saved in chunks, each chunk being one call to
+ * {@link IUpdatePrx#saveAndReturnIds(List)} and so one transaction on the
+ * server. Only the ids are sent back, and only the model objects of the
+ * current chunk are held in memory. If a chunk fails, the ROIs of the chunks
+ * already saved are kept and reported by the {@link PartialSaveException}.
+ */
+public class BulkShapes {
+
+    public static final byte TYPE_POINT = 0;
+
+    public static final byte TYPE_RECTANGLE = 1;
+
+    public static final byte TYPE_ELLIPSE = 2;
+
+    public static final byte TYPE_LINE = 3;
+
+    public static final byte TYPE_POLYGON = 4;
+
+    public static final byte TYPE_POLYLINE = 5;
+
+    public static final byte TYPE_MASK = 6;
+
+    /** The default number of shapes saved per transaction. */
+    public static final int DEFAULT_CHUNK_SIZE = 5000;
+
+    /**
+     * Notified after each chunk has been saved.
+     */
+    public interface Progress {
+
+        /**
+         * @param saved the number of shapes saved so far
+         * @param total the number of shapes to save
+         */
+        void update(int saved, int total);
+    }
+
+    /**
+     * Thrown when a chunk could not be saved. The chunks saved before it
+     * stay saved, so that they can be resumed from or deleted.
+     */
+    @SuppressWarnings("serial")
+    public static class PartialSaveException extends Exception {
+
+        /** The ids of the ROIs saved before the failure, in order. */
+        public final List<Long> roiIds;
+
+        /** The number of shapes saved before the failure. */
+        public final int saved;
+
+        PartialSaveException(List<Long> roiIds, int saved, Exception cause) {
+            super("Failed after saving " + saved + " shapes in "
+                    + roiIds.size() + " ROIs", cause);
+            this.roiIds = Collections.unmodifiableList(roiIds);
+            this.saved = saved;
+        }
+    }
+
+    /**
+     * Saves the shapes, which may not be polygons, polylines or masks, on
+     * the given image, <code>shapesPerRoi</code> shapes per ROI,
+     * <code>chunkSize</code> shapes per transaction.
+     * @return the ids of the ROIs created, in order
+     */
+    public static List<Long> save(ServiceFactoryPrx sf, long imageId,
+            byte[] types, double[] coords, int[] zct, int shapesPerRoi,
+            int chunkSize, Progress progress) throws PartialSaveException {
+        final int[] none = new int[types.length + 1];
+        return save(sf, imageId, types, coords, zct, none, new double[0],
+                none, new byte[0], shapesPerRoi, chunkSize, progress);
+    }
+
+    /**
+     * Saves the shapes on the given image, <code>shapesPerRoi</code> shapes
+     * per ROI, <code>chunkSize</code> shapes per transaction.
+     * @return the ids of the ROIs created, in order
+     */
+    public static List<Long> save(ServiceFactoryPrx sf, long imageId,
+            byte[] types, double[] coords, int[] zct, int[] pointOffsets,
+            double[] points, int[] maskOffsets, byte[] masks,
+            int shapesPerRoi, int chunkSize, Progress progress)
+            throws PartialSaveException {
+        final int total = types.length;
+        if (coords.length != 4 * total || zct.length != 3 * total) {
+            throw new IllegalArgumentException(
+                    "coords needs 4 and zct 3 values per shape");
+        }
+        if (pointOffsets.length != total + 1
+                || maskOffsets.length != total + 1) {
+            throw new IllegalArgumentException(
+                    "pointOffsets and maskOffsets need one more value than "
+                    + "there are shapes");
+        }
+        if (shapesPerRoi < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException(
+                    "shapesPerRoi and chunkSize must be positive");
+        }
+        /* keep the ROIs whole within a chunk */
+        chunkSize = Math.max(shapesPerRoi,
+                chunkSize - chunkSize % shapesPerRoi);
+
+        final List<Long> roiIds = new ArrayList<Long>();
+        int saved = 0;
+        try {
+            final IUpdatePrx update = sf.getUpdateService();
+            List<IObject> chunk = new ArrayList<IObject>();
+            Roi roi = null;
+            for (int i = 0; i < total; i++) {
+                if (i % shapesPerRoi == 0) {
+                    roi = new RoiI();
+                    roi.setImage(new ImageI(imageId, false));
+                    chunk.add(roi);
+                }
+                roi.addShape(createShape(types[i], coords, zct, pointOffsets,
+                        points, maskOffsets, masks, i));
+                if ((i + 1) % chunkSize == 0 || i + 1 == total) {
+                    for (long id : update.saveAndReturnIds(chunk)) {
+                        roiIds.add(id);
+                    }
+                    saved = i + 1;
+                    chunk = new ArrayList<IObject>();
+                    if (progress != null) {
+                        progress.update(saved, total);
+                    }
+                }
+            }
+        } catch (ServerError | RuntimeException e) {
+            /* including Ice.LocalException, e.g. the connection was lost */
+            throw new PartialSaveException(roiIds, saved, e);
+        }
+        return roiIds;
+    }
+
+    /**
+     * Creates the model object of shape <code>i</code>.
+     */
+    static Shape createShape(byte type, double[] coords, int[] zct,
+            int[] pointOffsets, double[] points, int[] maskOffsets,
+            byte[] masks, int i) {
+        final double a = coords[4 * i];
+        final double b = coords[4 * i + 1];
+        final double c = coords[4 * i + 2];
+        final double d = coords[4 * i + 3];
+        final Shape shape;
+        switch (type) {
+        case TYPE_POINT:
+            Point point = new PointI();
+            point.setX(omero.rtypes.rdouble(a));
+            point.setY(omero.rtypes.rdouble(b));
+            shape = point;
+            break;
+        case TYPE_RECTANGLE:
+            Rectangle rect = new RectangleI();
+            rect.setX(omero.rtypes.rdouble(a));
+            rect.setY(omero.rtypes.rdouble(b));
+            rect.setWidth(omero.rtypes.rdouble(c));
+            rect.setHeight(omero.rtypes.rdouble(d));
+            shape = rect;
+            break;
+        case TYPE_ELLIPSE:
+            Ellipse ellipse = new EllipseI();
+            ellipse.setX(omero.rtypes.rdouble(a));
+            ellipse.setY(omero.rtypes.rdouble(b));
+            ellipse.setRadiusX(omero.rtypes.rdouble(c));
+            ellipse.setRadiusY(omero.rtypes.rdouble(d));
+            shape = ellipse;
+            break;
+        case TYPE_LINE:
+            Line line = new LineI();
+            line.setX1(omero.rtypes.rdouble(a));
+            line.setY1(omero.rtypes.rdouble(b));
+            line.setX2(omero.rtypes.rdouble(c));
+            line.setY2(omero.rtypes.rdouble(d));
+            shape = line;
+            break;
+        case TYPE_POLYGON:
+            Polygon polygon = new PolygonI();
+            polygon.setPoints(omero.rtypes.rstring(
+                    toPoints(points, pointOffsets[i], pointOffsets[i + 1])));
+            shape = polygon;
+            break;
+        case TYPE_POLYLINE:
+            Polyline polyline = new PolylineI();
+            polyline.setPoints(omero.rtypes.rstring(
+                    toPoints(points, pointOffsets[i], pointOffsets[i + 1])));
+            shape = polyline;
+            break;
+        case TYPE_MASK:
+            Mask mask = new MaskI();
+            mask.setX(omero.rtypes.rdouble(a));
+            mask.setY(omero.rtypes.rdouble(b));
+            mask.setWidth(omero.rtypes.rdouble(c));
+            mask.setHeight(omero.rtypes.rdouble(d));
+            mask.setBytes(Arrays.copyOfRange(masks, maskOffsets[i],
+                    maskOffsets[i + 1]));
+            shape = mask;
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown shape type " + type
+                    + " for shape " + i);
+        }
+        if (zct[3 * i] >= 0) {
+            shape.setTheZ(omero.rtypes.rint(zct[3 * i]));
+        }
+        if (zct[3 * i + 1] >= 0) {
+            shape.setTheC(omero.rtypes.rint(zct[3 * i + 1]));
+        }
+        if (zct[3 * i + 2] >= 0) {
+            shape.setTheT(omero.rtypes.rint(zct[3 * i + 2]));
+        }
+        return shape;
+    }
+
+    /**
+     * Returns the points from <code>start</code> to <code>end</code> in the
+     * form <code>x1,y1 x2,y2 ...</code> of the points of a polygon.
+     */
+    static String toPoints(double[] points, int start, int end) {
+        if ((end - start) % 2 != 0) {
+            throw new IllegalArgumentException(
+                    "Odd number of coordinates from " + start + " to " + end);
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (int j = start; j < end; j += 2) {
+            if (j > start) {
+                sb.append(' ');
+            }
+            sb.append(points[j]).append(',').append(points[j + 1]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Saves 50000 rectangles on the image whose id is given on the command
+     * line.
+     */
+    public static void main(String args[]) throws Exception {
+        final long imageId = Long.parseLong(args[0]);
+        final int n = 50000;
+        final byte[] types = new byte[n];
+        final double[] coords = new double[4 * n];
+        final int[] zct = new int[3 * n];
+        for (int i = 0; i < n; i++) {
+            types[i] = TYPE_RECTANGLE;
+            coords[4 * i] = (i % 250) * 4;
+            coords[4 * i + 1] = (i / 250) * 4;
+            coords[4 * i + 2] = 3;
+            coords[4 * i + 3] = 3;
+            zct[3 * i + 1] = -1;
+        }
+
+        omero.client client = new omero.client();
+        try {
+            ServiceFactoryPrx sf = client.createSession();
+            List<Long> ids = save(sf, imageId, types, coords, zct, 100,
+                    DEFAULT_CHUNK_SIZE, new Progress() {
+                        @Override
+                        public void update(int saved, int total) {
+                            System.out.println(saved + "/" + total);
+                        }
+                    });
+            System.out.println("Created " + ids.size() + " ROIs");
+        } finally {
+            client.closeSession();
+        }
+    }
+}
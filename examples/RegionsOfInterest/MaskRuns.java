@@ -0,0 +1,270 @@
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import omero.model.Mask;
+import omero.model.MaskI;
+
+/**
+ * Run-length encoding of the bit mask of a {@link Mask}. The mask is read
+ * row by row and held as the lengths of alternating runs of unset and set
+ * pixels, the first run being unset and possibly empty. Label masks, which
+ * are mostly empty bounding boxes, need far fewer runs than pixels.
+ *
+ * The packed bits are only rebuilt when {@link #toBits()} or
+ * {@link #toCroppedMask(Mask)} are called, the statistics being computed
+ * from the runs directly. {@link #toBytes()} gives a compact variable-length
+ * form of the runs for storage or transfer.
+ */
+public class MaskRuns {
+
+    /** The width of the mask in pixels. */
+    public final int width;
+
+    /** The height of the mask in pixels. */
+    public final int height;
+
+    /** The lengths of the runs, starting with an unset run. */
+    private final int[] runs;
+
+    private MaskRuns(int width, int height, int[] runs) {
+        this.width = width;
+        this.height = height;
+        this.runs = runs;
+    }
+
+    /**
+     * Encodes the mask, whose bytes hold one bit per pixel, most
+     * significant bit first.
+     */
+    public static MaskRuns fromMask(Mask mask) {
+        return fromBits(mask.getBytes(),
+                (int) mask.getWidth().getValue(),
+                (int) mask.getHeight().getValue());
+    }
+
+    /**
+     * Encodes <code>width * height</code> bits packed most significant bit
+     * first.
+     */
+    public static MaskRuns fromBits(byte[] bits, int width, int height) {
+        final int pixels = width * height;
+        if (bits.length * 8 < pixels) {
+            throw new IllegalArgumentException("Mask has " + bits.length
+                    + " bytes for " + pixels + " pixels");
+        }
+        int[] runs = new int[16];
+        int count = 0;
+        int length = 0;
+        boolean current = false;
+        for (int i = 0; i < pixels; i++) {
+            final boolean set = (bits[i >> 3] & (0x80 >> (i & 7))) != 0;
+            if (set != current) {
+                if (count == runs.length) {
+                    runs = Arrays.copyOf(runs, count * 2);
+                }
+                runs[count++] = length;
+                length = 0;
+                current = set;
+            }
+            length++;
+        }
+        if (count == runs.length) {
+            runs = Arrays.copyOf(runs, count + 1);
+        }
+        runs[count++] = length;
+        return new MaskRuns(width, height, Arrays.copyOf(runs, count));
+    }
+
+    /**
+     * Rebuilds the packed bits, most significant bit first.
+     */
+    public byte[] toBits() {
+        final byte[] bits = new byte[(width * height + 7) / 8];
+        int position = 0;
+        for (int r = 0; r < runs.length; r++) {
+            if (r % 2 == 1) {
+                for (int i = position; i < position + runs[r]; i++) {
+                    bits[i >> 3] |= 0x80 >> (i & 7);
+                }
+            }
+            position += runs[r];
+        }
+        return bits;
+    }
+
+    /** Returns the number of runs. */
+    public int getRunCount() {
+        return runs.length;
+    }
+
+    /** Returns the number of set pixels. */
+    public long getArea() {
+        long area = 0;
+        for (int r = 1; r < runs.length; r += 2) {
+            area += runs[r];
+        }
+        return area;
+    }
+
+    /**
+     * Returns the centroid of the set pixels, relative to the mask origin,
+     * or <code>null</code> if no pixel is set.
+     */
+    public double[] getCentroid() {
+        double sumX = 0;
+        double sumY = 0;
+        long area = 0;
+        int position = 0;
+        for (int r = 0; r < runs.length; r++) {
+            if (r % 2 == 1) {
+                /* a run may wrap over several rows */
+                int start = position;
+                final int end = position + runs[r];
+                while (start < end) {
+                    final int y = start / width;
+                    final int x0 = start % width;
+                    final int n = Math.min(end - start, width - x0);
+                    sumX += n * (x0 + (n - 1) / 2.0);
+                    sumY += (double) n * y;
+                    area += n;
+                    start += n;
+                }
+            }
+            position += runs[r];
+        }
+        return area == 0 ? null : new double[] { sumX / area, sumY / area };
+    }
+
+    /**
+     * Returns the smallest box holding the set pixels as x, y, width and
+     * height relative to the mask origin, or <code>null</code> if no pixel
+     * is set.
+     */
+    public int[] getBounds() {
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        int position = 0;
+        for (int r = 0; r < runs.length; r++) {
+            if (r % 2 == 1 && runs[r] > 0) {
+                final int first = position;
+                final int last = position + runs[r] - 1;
+                minY = Math.min(minY, first / width);
+                maxY = Math.max(maxY, last / width);
+                if (first / width == last / width) {
+                    minX = Math.min(minX, first % width);
+                    maxX = Math.max(maxX, last % width);
+                } else {
+                    /* the run ends one row and starts the next one */
+                    minX = 0;
+                    maxX = width - 1;
+                }
+            }
+            position += runs[r];
+        }
+        return maxX < 0 ? null
+                : new int[] { minX, minY, maxX - minX + 1, maxY - minY + 1 };
+    }
+
+    /**
+     * Returns a copy of the mask reduced to the bounding box of its set
+     * pixels, or <code>null</code> if no pixel is set. The position is
+     * moved to the box and every other property of the original, e.g. the
+     * plane, the ROI, the colours and the text, is kept. Transformed masks
+     * are refused since the offset would have to be transformed too.
+     */
+    public Mask toCroppedMask(Mask original) {
+        if (original.getTransform() != null) {
+            throw new IllegalArgumentException(
+                    "Cannot crop a transformed mask");
+        }
+        final int[] bounds = getBounds();
+        if (bounds == null) {
+            return null;
+        }
+        final byte[] bits = new byte[(bounds[2] * bounds[3] + 7) / 8];
+        int position = 0;
+        for (int r = 0; r < runs.length; r++) {
+            if (r % 2 == 1) {
+                for (int i = position; i < position + runs[r]; i++) {
+                    final int x = i % width - bounds[0];
+                    final int y = i / width - bounds[1];
+                    final int j = y * bounds[2] + x;
+                    bits[j >> 3] |= 0x80 >> (j & 7);
+                }
+            }
+            position += runs[r];
+        }
+        final Mask cropped = new MaskI();
+        cropped.setX(omero.rtypes.rdouble(
+                original.getX().getValue() + bounds[0]));
+        cropped.setY(omero.rtypes.rdouble(
+                original.getY().getValue() + bounds[1]));
+        cropped.setWidth(omero.rtypes.rdouble(bounds[2]));
+        cropped.setHeight(omero.rtypes.rdouble(bounds[3]));
+        cropped.setTheZ(original.getTheZ());
+        cropped.setTheC(original.getTheC());
+        cropped.setTheT(original.getTheT());
+        cropped.setRoi(original.getRoi());
+        cropped.setPixels(original.getPixels());
+        cropped.setFillColor(original.getFillColor());
+        cropped.setFillRule(original.getFillRule());
+        cropped.setStrokeColor(original.getStrokeColor());
+        cropped.setStrokeDashArray(original.getStrokeDashArray());
+        cropped.setStrokeWidth(original.getStrokeWidth());
+        cropped.setTextValue(original.getTextValue());
+        cropped.setFontFamily(original.getFontFamily());
+        cropped.setFontSize(original.getFontSize());
+        cropped.setFontStyle(original.getFontStyle());
+        cropped.setLocked(original.getLocked());
+        cropped.setBytes(bits);
+        return cropped;
+    }
+
+    /**
+     * Serializes the width, the height and the runs as unsigned
+     * variable-length integers, seven bits per byte.
+     */
+    public byte[] toBytes() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarInt(out, width);
+        writeVarInt(out, height);
+        writeVarInt(out, runs.length);
+        for (int run : runs) {
+            writeVarInt(out, run);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads runs serialized by {@link #toBytes()}.
+     */
+    public static MaskRuns fromBytes(byte[] bytes) {
+        final int[] offset = new int[1];
+        final int width = readVarInt(bytes, offset);
+        final int height = readVarInt(bytes, offset);
+        final int[] runs = new int[readVarInt(bytes, offset)];
+        for (int r = 0; r < runs.length; r++) {
+            runs[r] = readVarInt(bytes, offset);
+        }
+        return new MaskRuns(width, height, runs);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] bytes, int[] offset) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[offset[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,150 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import omero.RInt;
+import omero.RLong;
+import omero.RType;
+import omero.ServerError;
+import omero.api.IQueryPrx;
+import omero.api.ServiceFactoryPrx;
+import omero.sys.ParametersI;
+
+/**
+ * Counts the ROIs and shapes of many images at once, e.g. of a whole plate
+ * for quality control, without loading any ROI. The counting is done by the
+ * database: one query for the ROIs and one for the shapes of every type,
+ * whatever the number of images.
+ */
+public class ShapeCounts {
+
+    /**
+     * The number of shapes of one type on one plane of an image.
+     */
+    public static class Count {
+
+        public long imageId;
+
+        /** The type of the shapes, e.g. <code>rectangle</code>. */
+        public String type;
+
+        /** The plane of the shapes, <code>null</code> if unset. */
+        public Integer z, t;
+
+        public long count;
+
+        @Override
+        public String toString() {
+            return "image " + imageId + " " + type + " z=" + z + " t=" + t
+                    + ": " + count;
+        }
+    }
+
+    /** Restricts to the images of a plate. */
+    private static final String IN_PLATE = "IN (SELECT ws.image.id "
+            + "FROM WellSample ws WHERE ws.well.plate.id = :id)";
+
+    /** Restricts to the given images. */
+    private static final String IN_IMAGES = "IN (:ids)";
+
+    private final IQueryPrx query;
+
+    public ShapeCounts(ServiceFactoryPrx sf) throws ServerError {
+        this.query = sf.getQueryService();
+    }
+
+    /**
+     * Returns the number of ROIs of each of the given images which has any.
+     */
+    public Map<Long, Long> countRois(List<Long> imageIds)
+            throws ServerError {
+        if (imageIds.isEmpty()) {
+            return new TreeMap<Long, Long>();
+        }
+        return countRois(IN_IMAGES, new ParametersI().addIds(imageIds));
+    }
+
+    /**
+     * Returns the number of ROIs of each image of the plate which has any.
+     */
+    public Map<Long, Long> countPlateRois(long plateId) throws ServerError {
+        return countRois(IN_PLATE, new ParametersI().addId(plateId));
+    }
+
+    /**
+     * Returns the number of shapes of the given images grouped by image,
+     * shape type, Z and T.
+     */
+    public List<Count> countShapes(List<Long> imageIds) throws ServerError {
+        if (imageIds.isEmpty()) {
+            return new ArrayList<Count>();
+        }
+        return countShapes(IN_IMAGES, new ParametersI().addIds(imageIds));
+    }
+
+    /**
+     * Returns the number of shapes of the images of the plate grouped by
+     * image, shape type, Z and T.
+     */
+    public List<Count> countPlateShapes(long plateId) throws ServerError {
+        return countShapes(IN_PLATE, new ParametersI().addId(plateId));
+    }
+
+    private Map<Long, Long> countRois(String images, ParametersI params)
+            throws ServerError {
+        final Map<Long, Long> counts = new TreeMap<Long, Long>();
+        for (List<RType> row : query.projection(
+                "SELECT r.image.id, COUNT(r) FROM Roi r "
+                + "WHERE r.image.id " + images + " GROUP BY r.image.id",
+                params)) {
+            counts.put(((RLong) row.get(0)).getValue(),
+                    ((RLong) row.get(1)).getValue());
+        }
+        return counts;
+    }
+
+    private List<Count> countShapes(String images, ParametersI params)
+            throws ServerError {
+        final List<Count> counts = new ArrayList<Count>();
+        for (List<RType> row : query.projection(
+                "SELECT s.roi.image.id, s.class, s.theZ, s.theT, COUNT(s) "
+                + "FROM Shape s "
+                + "WHERE s.roi.image.id " + images + " "
+                + "GROUP BY s.roi.image.id, s.class, s.theZ, s.theT",
+                params)) {
+            final Count count = new Count();
+            count.imageId = ((RLong) row.get(0)).getValue();
+            count.type = ShapeTypes.typeOf(row.get(1));
+            count.z = row.get(2) == null ? null
+                    : ((RInt) row.get(2)).getValue();
+            count.t = row.get(3) == null ? null
+                    : ((RInt) row.get(3)).getValue();
+            count.count = ((RLong) row.get(4)).getValue();
+            counts.add(count);
+        }
+        return counts;
+    }
+
+    /**
+     * Prints the ROI and shape counts of the plate whose id is given on the
+     * command line.
+     */
+    public static void main(String args[]) throws Exception {
+        final long plateId = Long.parseLong(args[0]);
+        omero.client client = new omero.client();
+        try {
+            ShapeCounts counts = new ShapeCounts(client.createSession());
+            for (Map.Entry<Long, Long> entry
+                    : counts.countPlateRois(plateId).entrySet()) {
+                System.out.println("image " + entry.getKey() + ": "
+                        + entry.getValue() + " ROIs");
+            }
+            for (Count count : counts.countPlateShapes(plateId)) {
+                System.out.println(count);
+            }
+        } finally {
+            client.closeSession();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import omero.RDouble;
+import omero.RInt;
+import omero.RLong;
+import omero.RString;
+import omero.RType;
+import omero.ServerError;
+import omero.api.IQueryPrx;
+import omero.api.ServiceFactoryPrx;
+import omero.model.IObject;
+import omero.model.Roi;
+import omero.model.Shape;
+import omero.sys.ParametersI;
+
+/**
+ * Pages through the ROIs and shapes of an image so that images with
+ * millions of shapes can be browsed with bounded memory.
+ *
+ * {@link #loadRois(long, int, int)} loads a page of ROIs with their shapes.
+ * {@link #nextHeaders(Cursor, int)} only loads the header of each shape:
+ * its id, ROI, type, Z/C/T and bounding box, which is what is needed to
+ * decide what to draw. Shapes of every type are returned, those whose box
+ * is not known from {@link ShapeTypes} without one. The geometry of a shape is then loaded on demand by
+ * {@link #loadShape(long)}.
+ */
+public class ShapePages {
+
+    /**
+     * The id, type, plane and bounding box of a shape.
+     */
+    public static class ShapeHeader {
+
+        public long id;
+
+        public long roiId;
+
+        /** The type of the shape, e.g. <code>rectangle</code>. */
+        public String type;
+
+        /** The plane of the shape, <code>null</code> if unset. */
+        public Integer z, c, t;
+
+        /**
+         * The bounding box of the shape, before any transform, or
+         * <code>NaN</code> if it is not known for this type of shape.
+         */
+        public double x = Double.NaN, y = Double.NaN, width = Double.NaN,
+                height = Double.NaN;
+    }
+
+    /**
+     * Where the next page of shape headers starts. The headers are read in
+     * increasing id order, whatever the type of the shapes.
+     */
+    public static class Cursor {
+
+        final long imageId;
+
+        long afterId = -1;
+
+        boolean done;
+
+        public Cursor(long imageId) {
+            this.imageId = imageId;
+        }
+
+        /** Returns <code>true</code> once all the headers have been read. */
+        public boolean isDone() {
+            return done;
+        }
+    }
+
+    private final IQueryPrx query;
+
+    public ShapePages(ServiceFactoryPrx sf) throws ServerError {
+        this.query = sf.getQueryService();
+    }
+
+    /**
+     * Loads the ROIs <code>offset</code> to <code>offset + limit - 1</code>
+     * of the image, ordered by id, with their shapes.
+     */
+    public List<Roi> loadRois(long imageId, int offset, int limit)
+            throws ServerError {
+        final ParametersI params = new ParametersI();
+        params.addId(imageId);
+        params.page(offset, limit);
+        final List<Long> ids = new ArrayList<Long>();
+        for (List<RType> row : query.projection(
+                "SELECT r.id FROM Roi r WHERE r.image.id = :id ORDER BY r.id",
+                params)) {
+            ids.add(((RLong) row.get(0)).getValue());
+        }
+        final List<Roi> rois = new ArrayList<Roi>();
+        if (ids.isEmpty()) {
+            return rois;
+        }
+        for (IObject roi : query.findAllByQuery(
+                "SELECT DISTINCT r FROM Roi r LEFT OUTER JOIN FETCH r.shapes "
+                + "WHERE r.id IN (:ids) ORDER BY r.id",
+                new ParametersI().addIds(ids))) {
+            rois.add((Roi) roi);
+        }
+        return rois;
+    }
+
+    /**
+     * Returns the headers of at most <code>limit</code> shapes and moves the
+     * cursor past them. An empty list is returned once the cursor is done.
+     * The shapes are read with one query, then their boxes with one query
+     * per type found among them.
+     */
+    public List<ShapeHeader> nextHeaders(Cursor cursor, int limit)
+            throws ServerError {
+        final List<ShapeHeader> headers = new ArrayList<ShapeHeader>();
+        if (cursor.isDone()) {
+            return headers;
+        }
+        final ParametersI params = new ParametersI();
+        params.addId(cursor.imageId);
+        params.addLong("after", cursor.afterId);
+        params.page(0, limit);
+        final List<List<RType>> rows = query.projection(
+                "SELECT s.id, s.roi.id, s.class, s.theZ, s.theC, s.theT "
+                + "FROM Shape s "
+                + "WHERE s.roi.image.id = :id AND s.id > :after "
+                + "ORDER BY s.id", params);
+        final Map<String, Map<Long, ShapeHeader>> byType =
+                new LinkedHashMap<String, Map<Long, ShapeHeader>>();
+        for (List<RType> row : rows) {
+            final ShapeHeader header = new ShapeHeader();
+            header.id = ((RLong) row.get(0)).getValue();
+            header.roiId = ((RLong) row.get(1)).getValue();
+            header.type = ShapeTypes.typeOf(row.get(2));
+            header.z = toInteger(row.get(3));
+            header.c = toInteger(row.get(4));
+            header.t = toInteger(row.get(5));
+            headers.add(header);
+            Map<Long, ShapeHeader> ofType = byType.get(header.type);
+            if (ofType == null) {
+                ofType = new LinkedHashMap<Long, ShapeHeader>();
+                byType.put(header.type, ofType);
+            }
+            ofType.put(header.id, header);
+        }
+        for (Map.Entry<String, Map<Long, ShapeHeader>> entry
+                : byType.entrySet()) {
+            final String[] type = ShapeTypes.BOUNDED.get(entry.getKey());
+            if (type == null) {
+                /* no known box, the header is returned without one */
+                continue;
+            }
+            for (List<RType> row : query.projection(
+                    "SELECT s.id, " + type[1] + " FROM " + type[0] + " s "
+                    + "WHERE s.id IN (:ids)",
+                    new ParametersI().addIds(entry.getValue().keySet()))) {
+                setBounds(entry.getValue().get(
+                        ((RLong) row.get(0)).getValue()), row);
+            }
+        }
+        if (rows.size() < limit) {
+            cursor.done = true;
+        } else {
+            cursor.afterId = headers.get(headers.size() - 1).id;
+        }
+        return headers;
+    }
+
+    /**
+     * Loads the full geometry of a shape whose header was read.
+     */
+    public Shape loadShape(long shapeId) throws ServerError {
+        return (Shape) query.get("Shape", shapeId);
+    }
+
+    /**
+     * Sets the box of the header from the id and the properties listed for
+     * its type in {@link ShapeTypes#BOUNDED}.
+     */
+    private static void setBounds(ShapeHeader header, List<RType> row) {
+        if (row.size() == 2) {
+            final RString points = (RString) row.get(1);
+            setBounds(header, points == null ? null : points.getValue());
+            return;
+        }
+        final double a = toDouble(row.get(1));
+        final double b = toDouble(row.get(2));
+        if (row.size() == 3) {
+            header.x = a;
+            header.y = b;
+            header.width = 0;
+            header.height = 0;
+            return;
+        }
+        final double c = toDouble(row.get(3));
+        final double d = toDouble(row.get(4));
+        if ("ellipse".equals(header.type)) {
+            header.x = a - c;
+            header.y = b - d;
+            header.width = 2 * c;
+            header.height = 2 * d;
+        } else if ("line".equals(header.type)) {
+            header.x = Math.min(a, c);
+            header.y = Math.min(b, d);
+            header.width = Math.abs(c - a);
+            header.height = Math.abs(d - b);
+        } else {
+            header.x = a;
+            header.y = b;
+            header.width = c;
+            header.height = d;
+        }
+    }
+
+    /**
+     * Sets the bounding box of a polygon or polyline from its points,
+     * given as <code>x1,y1 x2,y2 ...</code>.
+     */
+    private static void setBounds(ShapeHeader header, String points) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        if (points != null) {
+            for (String point : points.trim().split("\\s+")) {
+                final String[] xy = point.split(",");
+                if (xy.length != 2) {
+                    continue;
+                }
+                try {
+                    final double x = Double.parseDouble(xy[0]);
+                    final double y = Double.parseDouble(xy[1]);
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                } catch (NumberFormatException e) {
+                    /* not a coordinate pair */
+                }
+            }
+        }
+        if (maxX >= minX) {
+            header.x = minX;
+            header.y = minY;
+            header.width = maxX - minX;
+            header.height = maxY - minY;
+        }
+    }
+
+    private static Integer toInteger(RType value) {
+        return value == null ? null : ((RInt) value).getValue();
+    }
+
+    private static double toDouble(RType value) {
+        return value == null ? 0 : ((RDouble) value).getValue();
+    }
+
+    /**
+     * Prints the headers of the shapes of the image whose id is given on the
+     * command line, 1000 at a time.
+     */
+    public static void main(String args[]) throws Exception {
+        final long imageId = Long.parseLong(args[0]);
+        omero.client client = new omero.client();
+        try {
+            ShapePages pages = new ShapePages(client.createSession());
+            Cursor cursor = new Cursor(imageId);
+            int count = 0;
+            while (!cursor.isDone()) {
+                for (ShapeHeader h : pages.nextHeaders(cursor, 1000)) {
+                    System.out.println(String.format(
+                            "%s %d z=%s t=%s [%.1f, %.1f, %.1f, %.1f]",
+                            h.type, h.id, h.z, h.t, h.x, h.y, h.width,
+                            h.height));
+                    count++;
+                }
+            }
+            System.out.println(count + " shapes");
+        } finally {
+            client.closeSession();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import omero.RType;
+
+/**
+ * The shape types whose bounding box the examples know how to read, shared
+ * by {@link ShapePages} and {@link ShapeCounts}. Shapes of any other type,
+ * e.g. paths, are still returned, only without a box.
+ */
+public final class ShapeTypes {
+
+    /**
+     * The model class and the properties giving the bounding box of each
+     * type, by the name returned by {@link #typeOf(RType)}.
+     */
+    public static final Map<String, String[]> BOUNDED;
+
+    static {
+        final Map<String, String[]> types =
+                new LinkedHashMap<String, String[]>();
+        types.put("rectangle",
+                new String[] { "Rectangle", "s.x, s.y, s.width, s.height" });
+        types.put("mask",
+                new String[] { "Mask", "s.x, s.y, s.width, s.height" });
+        types.put("ellipse",
+                new String[] { "Ellipse", "s.x, s.y, s.radiusX, s.radiusY" });
+        types.put("point", new String[] { "Point", "s.x, s.y" });
+        types.put("label", new String[] { "Label", "s.x, s.y" });
+        types.put("line", new String[] { "Line", "s.x1, s.y1, s.x2, s.y2" });
+        types.put("polygon", new String[] { "Polygon", "s.points" });
+        types.put("polyline", new String[] { "Polyline", "s.points" });
+        BOUNDED = Collections.unmodifiableMap(types);
+    }
+
+    private ShapeTypes() {
+    }
+
+    /**
+     * Returns the type of a shape from the value of <code>s.class</code> in
+     * a projection, be it the discriminator or the class name, in lower case
+     * without a package, e.g. <code>rectangle</code>.
+     */
+    public static String typeOf(RType cls) {
+        final String name = String.valueOf(omero.rtypes.unwrap(cls));
+        return name.substring(name.lastIndexOf('.') + 1)
+                .toLowerCase(Locale.ENGLISH);
+    }
+}
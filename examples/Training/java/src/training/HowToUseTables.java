@@ -23,6 +23,13 @@ package training;
 
 import java.util.Collection;
 
+import omero.grid.Column;
+import omero.grid.Data;
+import omero.grid.DoubleColumn;
+import omero.grid.LongColumn;
+import omero.grid.StringColumn;
+import omero.grid.TablePrx;
+import omero.model.OriginalFileI;
 import omero.gateway.Gateway;
 import omero.gateway.LoginCredentials;
 import omero.gateway.SecurityContext;
@@ -56,9 +63,15 @@ public class HowToUseTables
     private static String password = "password";
     //end edit
 
+    /** The maximum number of cells sent in one update call.*/
+    private static final int UPDATE_BATCH_SIZE = 10000;
+
     /** The image.*/
     private ImageData image;
 
+    /** The original file of the table created.*/
+    private long fileId;
+
     private Gateway gateway;
 
     private SecurityContext ctx;
@@ -107,7 +120,7 @@ public class HowToUseTables
         
         // Find the table again
         Collection<FileAnnotationData> tables = fac.getAvailableTables(ctx, image);
-        long fileId  = tables.iterator().next().getFileID();
+        fileId  = tables.iterator().next().getFileID();
         
         // Request second and third column of the first three rows
         TableData tableData2 = fac.getTable(ctx, fileId, 0, 2, 1, 2);
@@ -124,6 +137,72 @@ public class HowToUseTables
         }
     }
 
+// Update single cells
+// ===================
+
+    /**
+     * Writes the values of one column for the given rows only. The other
+     * columns and rows are neither read nor written, and the values are
+     * sent in batches of at most {@link #UPDATE_BATCH_SIZE} cells.
+     * @param rows The indices of the rows to modify.
+     * @param column The index of the column to modify.
+     * @param values The new values, one per row.
+     * @throws Exception
+     */
+    private void updateCells(long[] rows, int column, Object[] values)
+            throws Exception
+    {
+        if (rows.length != values.length)
+            throw new IllegalArgumentException(
+                    "One value per row is required");
+        TablePrx table = gateway.getSharedResources(ctx).openTable(
+                new OriginalFileI(fileId, false));
+        try {
+            Column header = table.getHeaders()[column];
+            for (int from = 0; from < rows.length;
+                    from += UPDATE_BATCH_SIZE) {
+                int n = Math.min(UPDATE_BATCH_SIZE, rows.length - from);
+                Data data = new Data();
+                data.rowNumbers = new long[n];
+                System.arraycopy(rows, from, data.rowNumbers, 0, n);
+                data.columns = new Column[] {
+                        createColumn(header, values, from, n) };
+                table.update(data);
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    /**
+     * Creates a column of the type of the header holding n values.
+     */
+    private Column createColumn(Column header, Object[] values, int from,
+            int n)
+    {
+        if (header instanceof LongColumn) {
+            long[] v = new long[n];
+            for (int i = 0; i < n; i++)
+                v[i] = (Long) values[from + i];
+            return new LongColumn(header.name, header.description, v);
+        }
+        if (header instanceof DoubleColumn) {
+            double[] v = new double[n];
+            for (int i = 0; i < n; i++)
+                v[i] = (Double) values[from + i];
+            return new DoubleColumn(header.name, header.description, v);
+        }
+        if (header instanceof StringColumn) {
+            String[] v = new String[n];
+            for (int i = 0; i < n; i++)
+                v[i] = (String) values[from + i];
+            return new StringColumn(header.name, header.description,
+                    ((StringColumn) header).size, v);
+        }
+        throw new IllegalArgumentException("Unsupported column type: "
+                + header.getClass().getSimpleName());
+    }
+
     /**
      * end-code
      */
@@ -143,6 +222,7 @@ public class HowToUseTables
             ctx = new SecurityContext(user.getGroupId());
             image = loadImage(imageId);
             createTableandLinkToImage();
+            updateCells(new long[] {1, 3}, 2, new Double[] {20d, 40d});
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
@@ -0,0 +1,279 @@
+-- Copyright (C) 2026 University of Dundee & Open Microscopy Environment.
+-- All rights reserved.
+-- Use is subject to license terms supplied in LICENSE.txt
+--
+-- This program is free software; you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation; either version 2 of the License, or
+-- (at your option) any later version.
+--
+-- This program is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License along
+-- with this program; if not, write to the Free Software Foundation, Inc.,
+-- 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+--
+
+---
+--- Optional closure of the container hierarchy of the OMERO5.4__0 database.
+---
+--- _hierarchy_closure holds a row for every ancestor of every object of the
+--- Project > Dataset > Image, Screen > Plate > Well > Image and Folder >
+--- Folder/Image hierarchies, with the number of distinct paths between
+--- them since an image may be reached through several datasets or folders.
+--- Triggers on the link tables, on well, on wellsample and on folder keep
+--- it up to date: adding or removing the link from a parent to a child adds
+--- or removes, for every ancestor of the parent and every descendant of the
+--- child, the paths through that link. An ancestor row is deleted once it
+--- has no path left.
+---
+--- Two transactions linking the two ends of a chain at once would each
+--- miss the other's rows, so a change first takes transaction-level
+--- advisory locks on the parent, the child and every ancestor of the
+--- parent. Of two links on a common path, the child of the upper link is
+--- the parent of the lower link or one of its ancestors, so both lock it
+--- and wait on each other, while links in unrelated parts of the
+--- hierarchy, e.g. wells of plates in different screens, do not.
+--- Readers never wait.
+---
+--- _hierarchy_ancestors(type, id) and _hierarchy_descendants(type, id)
+--- then answer what finding parents or children answers with one indexed
+--- query rather than a walk of the graph.
+---
+
+BEGIN;
+
+
+--
+-- check OMERO database version
+--
+
+CREATE OR REPLACE FUNCTION omero_assert_db_version(expected_version VARCHAR, expected_patch INTEGER)
+    RETURNS void AS $$
+
+DECLARE
+    current_version VARCHAR;
+    current_patch INTEGER;
+
+BEGIN
+    SELECT currentversion, currentpatch INTO STRICT current_version, current_patch
+        FROM dbpatch ORDER BY id DESC LIMIT 1;
+
+    IF current_version <> expected_version OR current_patch <> expected_patch THEN
+        RAISE EXCEPTION 'wrong OMERO database version for this upgrade script';
+    END IF;
+
+END;$$ LANGUAGE plpgsql;
+
+SELECT omero_assert_db_version('OMERO5.4', 0);
+DROP FUNCTION omero_assert_db_version(varchar, int);
+
+
+--
+-- Actual upgrade
+--
+
+INSERT INTO dbpatch (currentVersion, currentPatch, previousVersion, previousPatch)
+             VALUES ('OMERO5.4',     0,            'OMERO5.4',      0);
+
+CREATE TABLE _hierarchy_closure (
+    ancestor_type VARCHAR(16) NOT NULL,
+    ancestor_id BIGINT NOT NULL,
+    descendant_type VARCHAR(16) NOT NULL,
+    descendant_id BIGINT NOT NULL,
+    paths INTEGER NOT NULL,
+    PRIMARY KEY (descendant_type, descendant_id, ancestor_type, ancestor_id));
+
+CREATE INDEX _hierarchy_closure_ancestor
+    ON _hierarchy_closure (ancestor_type, ancestor_id, descendant_type);
+
+-- locks the parent, the child and the ancestors of the parent, reading the
+-- ancestors again once locked in case a concurrent link added some
+CREATE FUNCTION _hierarchy_lock(parent_type VARCHAR, parent_id BIGINT,
+                                child_type VARCHAR, child_id BIGINT)
+    RETURNS void AS $$
+
+    DECLARE
+        node RECORD;
+        locked TEXT[] := '{}';
+        added BOOLEAN;
+
+    BEGIN
+        LOOP
+            added := FALSE;
+            FOR node IN
+                SELECT n.type, n.id
+                    FROM (SELECT parent_type AS type, parent_id AS id
+                          UNION
+                          SELECT child_type, child_id
+                          UNION
+                          SELECT ancestor_type, ancestor_id FROM _hierarchy_closure
+                              WHERE descendant_type = parent_type AND descendant_id = parent_id) AS n
+                    ORDER BY n.type, n.id
+            LOOP
+                IF NOT (node.type || ':' || node.id) = ANY (locked) THEN
+                    PERFORM pg_advisory_xact_lock(hashtext(node.type), hashtext(node.id::TEXT));
+                    locked := locked || (node.type || ':' || node.id);
+                    added := TRUE;
+                END IF;
+            END LOOP;
+            EXIT WHEN NOT added;
+        END LOOP;
+    END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION _hierarchy_link(parent_type VARCHAR, parent_id BIGINT,
+                                child_type VARCHAR, child_id BIGINT, delta INTEGER)
+    RETURNS void AS $$
+
+    DECLARE
+        pair RECORD;
+        remaining INTEGER;
+
+    BEGIN
+        -- once locked, the rows read below include any committed meanwhile
+        PERFORM _hierarchy_lock(parent_type, parent_id, child_type, child_id);
+
+        -- the cursor does not see the changes made in the loop
+        FOR pair IN
+            SELECT a.type AS a_type, a.id AS a_id, d.type AS d_type, d.id AS d_id,
+                   a.paths * d.paths AS paths
+                FROM (SELECT parent_type AS type, parent_id AS id, 1 AS paths
+                      UNION ALL
+                      SELECT ancestor_type, ancestor_id, c.paths FROM _hierarchy_closure AS c
+                          WHERE descendant_type = parent_type AND descendant_id = parent_id) AS a,
+                     (SELECT child_type AS type, child_id AS id, 1 AS paths
+                      UNION ALL
+                      SELECT descendant_type, descendant_id, c.paths FROM _hierarchy_closure AS c
+                          WHERE ancestor_type = child_type AND ancestor_id = child_id) AS d
+        LOOP
+            UPDATE _hierarchy_closure SET paths = paths + delta * pair.paths
+                WHERE descendant_type = pair.d_type AND descendant_id = pair.d_id
+                  AND ancestor_type = pair.a_type AND ancestor_id = pair.a_id
+                RETURNING paths INTO remaining;
+            IF NOT FOUND THEN
+                IF delta > 0 THEN
+                    INSERT INTO _hierarchy_closure (ancestor_type, ancestor_id, descendant_type, descendant_id, paths)
+                        VALUES (pair.a_type, pair.a_id, pair.d_type, pair.d_id, delta * pair.paths);
+                END IF;
+            ELSIF remaining <= 0 THEN
+                DELETE FROM _hierarchy_closure
+                    WHERE descendant_type = pair.d_type AND descendant_id = pair.d_id
+                      AND ancestor_type = pair.a_type AND ancestor_id = pair.a_id;
+            END IF;
+        END LOOP;
+    END;
+$$ LANGUAGE plpgsql;
+
+-- arguments: parent type, parent column, child type, child column
+CREATE FUNCTION _hierarchy_edge_trigger() RETURNS TRIGGER AS $$
+
+    DECLARE
+        old_parent BIGINT;
+        old_child BIGINT;
+        new_parent BIGINT;
+        new_child BIGINT;
+
+    BEGIN
+        IF TG_OP <> 'INSERT' THEN
+            old_parent := (row_to_json(OLD) ->> TG_ARGV[1])::BIGINT;
+            old_child := (row_to_json(OLD) ->> TG_ARGV[3])::BIGINT;
+        END IF;
+        IF TG_OP <> 'DELETE' THEN
+            new_parent := (row_to_json(NEW) ->> TG_ARGV[1])::BIGINT;
+            new_child := (row_to_json(NEW) ->> TG_ARGV[3])::BIGINT;
+        END IF;
+
+        IF old_parent IS NOT DISTINCT FROM new_parent AND old_child IS NOT DISTINCT FROM new_child THEN
+            RETURN NULL;
+        END IF;
+
+        IF old_parent IS NOT NULL AND old_child IS NOT NULL THEN
+            PERFORM _hierarchy_link(TG_ARGV[0], old_parent, TG_ARGV[2], old_child, -1);
+        END IF;
+        IF new_parent IS NOT NULL AND new_child IS NOT NULL THEN
+            PERFORM _hierarchy_link(TG_ARGV[0], new_parent, TG_ARGV[2], new_child, 1);
+        END IF;
+
+        RETURN NULL;
+    END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER _hierarchy_projectdatasetlink_trigger
+    AFTER INSERT OR UPDATE OR DELETE ON projectdatasetlink
+    FOR EACH ROW
+    EXECUTE PROCEDURE _hierarchy_edge_trigger('Project', 'parent', 'Dataset', 'child');
+
+CREATE TRIGGER _hierarchy_datasetimagelink_trigger
+    AFTER INSERT OR UPDATE OR DELETE ON datasetimagelink
+    FOR EACH ROW
+    EXECUTE PROCEDURE _hierarchy_edge_trigger('Dataset', 'parent', 'Image', 'child');
+
+CREATE TRIGGER _hierarchy_screenplatelink_trigger
+    AFTER INSERT OR UPDATE OR DELETE ON screenplatelink
+    FOR EACH ROW
+    EXECUTE PROCEDURE _hierarchy_edge_trigger('Screen', 'parent', 'Plate', 'child');
+
+CREATE TRIGGER _hierarchy_well_trigger
+    AFTER INSERT OR UPDATE OR DELETE ON well
+    FOR EACH ROW
+    EXECUTE PROCEDURE _hierarchy_edge_trigger('Plate', 'plate', 'Well', 'id');
+
+CREATE TRIGGER _hierarchy_wellsample_trigger
+    AFTER INSERT OR UPDATE OR DELETE ON wellsample
+    FOR EACH ROW
+    EXECUTE PROCEDURE _hierarchy_edge_trigger('Well', 'well', 'Image', 'image');
+
+CREATE TRIGGER _hierarchy_folder_trigger
+    AFTER INSERT OR UPDATE OR DELETE ON folder
+    FOR EACH ROW
+    EXECUTE PROCEDURE _hierarchy_edge_trigger('Folder', 'parentfolder', 'Folder', 'id');
+
+CREATE TRIGGER _hierarchy_folderimagelink_trigger
+    AFTER INSERT OR UPDATE OR DELETE ON folderimagelink
+    FOR EACH ROW
+    EXECUTE PROCEDURE _hierarchy_edge_trigger('Folder', 'parent', 'Image', 'child');
+
+CREATE FUNCTION _hierarchy_ancestors(type VARCHAR, id BIGINT)
+    RETURNS TABLE (ancestor_type VARCHAR, ancestor_id BIGINT) AS $$
+
+    SELECT c.ancestor_type, c.ancestor_id FROM _hierarchy_closure AS c
+        WHERE c.descendant_type = $1 AND c.descendant_id = $2;
+$$ LANGUAGE sql STABLE;
+
+CREATE FUNCTION _hierarchy_descendants(type VARCHAR, id BIGINT)
+    RETURNS TABLE (descendant_type VARCHAR, descendant_id BIGINT) AS $$
+
+    SELECT c.descendant_type, c.descendant_id FROM _hierarchy_closure AS c
+        WHERE c.ancestor_type = $1 AND c.ancestor_id = $2;
+$$ LANGUAGE sql STABLE;
+
+-- the paths are counted so the links may be added in any order
+DO $$
+BEGIN
+    PERFORM _hierarchy_link('Project', parent, 'Dataset', child, 1) FROM projectdatasetlink;
+    PERFORM _hierarchy_link('Dataset', parent, 'Image', child, 1) FROM datasetimagelink;
+    PERFORM _hierarchy_link('Screen', parent, 'Plate', child, 1) FROM screenplatelink;
+    PERFORM _hierarchy_link('Plate', plate, 'Well', id, 1) FROM well;
+    PERFORM _hierarchy_link('Well', well, 'Image', image, 1) FROM wellsample;
+    PERFORM _hierarchy_link('Folder', parentfolder, 'Folder', id, 1) FROM folder
+        WHERE parentfolder IS NOT NULL;
+    PERFORM _hierarchy_link('Folder', parent, 'Image', child, 1) FROM folderimagelink;
+END;$$;
+
+ANALYZE _hierarchy_closure;
+
+
+--
+-- FINISHED
+--
+
+UPDATE dbpatch SET message = 'Hierarchy closure created.', finished = clock_timestamp()
+    WHERE id IN (SELECT id FROM dbpatch ORDER BY id DESC LIMIT 1);
+
+SELECT 'YOU HAVE SUCCESSFULLY CREATED THE HIERARCHY CLOSURE' AS Status;
+
+COMMIT;
@@ -0,0 +1,217 @@
+-- Copyright (C) 2026 University of Dundee & Open Microscopy Environment.
+-- All rights reserved.
+-- Use is subject to license terms supplied in LICENSE.txt
+--
+-- This program is free software; you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation; either version 2 of the License, or
+-- (at your option) any later version.
+--
+-- This program is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License along
+-- with this program; if not, write to the Free Software Foundation, Inc.,
+-- 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+--
+
+---
+--- Optional spatial index of the shapes of the OMERO5.4__0 database.
+---
+--- The bounding box of every shape is kept, with the image, Z and T of
+--- the shape, in _shape_region which triggers maintain as shapes and
+--- ROIs are created, modified or deleted. The box is in the coordinates
+--- of the image, before any transform of the shape is applied.
+---
+--- _shapes_in_region(image, z, t, x, y, width, height) then returns the
+--- ids of the shapes of the image which are visible on that plane, i.e.
+--- with a matching or unset Z and T, and whose bounding box intersects
+--- the given region, using a GiST index rather than loading every shape
+--- of the plane. If the btree_gist extension is installed the index is on
+--- the image and the box together, otherwise a GiST index on the box is
+--- combined with a btree on the image. Creating the extension needs a
+--- superuser before PostgreSQL 13 so the script does not do it: run
+---     CREATE EXTENSION btree_gist;
+--- as a superuser beforehand to get the combined index.
+---
+--- Paths, whose SVG data is not parsed, and any shape with a discriminator
+--- _shape_bbox does not know are left out of the index, so that saving such
+--- a shape never fails because of the index. _shapes_in_region does not
+--- return them.
+---
+
+BEGIN;
+
+
+--
+-- check OMERO database version
+--
+
+CREATE OR REPLACE FUNCTION omero_assert_db_version(expected_version VARCHAR, expected_patch INTEGER)
+    RETURNS void AS $$
+
+DECLARE
+    current_version VARCHAR;
+    current_patch INTEGER;
+
+BEGIN
+    SELECT currentversion, currentpatch INTO STRICT current_version, current_patch
+        FROM dbpatch ORDER BY id DESC LIMIT 1;
+
+    IF current_version <> expected_version OR current_patch <> expected_patch THEN
+        RAISE EXCEPTION 'wrong OMERO database version for this upgrade script';
+    END IF;
+
+END;$$ LANGUAGE plpgsql;
+
+SELECT omero_assert_db_version('OMERO5.4', 0);
+DROP FUNCTION omero_assert_db_version(varchar, int);
+
+
+--
+-- Actual upgrade
+--
+
+INSERT INTO dbpatch (currentVersion, currentPatch, previousVersion, previousPatch)
+             VALUES ('OMERO5.4',     0,            'OMERO5.4',      0);
+
+CREATE FUNCTION _shape_bbox(discriminator VARCHAR, x FLOAT8, y FLOAT8, width FLOAT8, height FLOAT8,
+                            radiusx FLOAT8, radiusy FLOAT8, x1 FLOAT8, y1 FLOAT8, x2 FLOAT8, y2 FLOAT8,
+                            points TEXT) RETURNS box AS $$
+
+    DECLARE
+        min_x FLOAT8;
+        min_y FLOAT8;
+        max_x FLOAT8;
+        max_y FLOAT8;
+
+    BEGIN
+        CASE discriminator
+            WHEN 'rectangle', 'mask' THEN
+                RETURN box(point(x, y), point(x + width, y + height));
+            WHEN 'ellipse' THEN
+                RETURN box(point(x - radiusx, y - radiusy), point(x + radiusx, y + radiusy));
+            WHEN 'point', 'label' THEN
+                RETURN box(point(x, y), point(x, y));
+            WHEN 'line' THEN
+                RETURN box(point(x1, y1), point(x2, y2));
+            WHEN 'polygon', 'polyline' THEN
+                SELECT min(xy[1]::FLOAT8), min(xy[2]::FLOAT8), max(xy[1]::FLOAT8), max(xy[2]::FLOAT8)
+                    INTO min_x, min_y, max_x, max_y
+                    FROM regexp_matches(points,
+                        '(-?[0-9]+(?:\.[0-9]*)?(?:[eE][-+]?[0-9]+)?)\s*,\s*(-?[0-9]+(?:\.[0-9]*)?(?:[eE][-+]?[0-9]+)?)',
+                        'g') AS xy;
+                IF min_x IS NULL THEN
+                    RETURN NULL;
+                END IF;
+                RETURN box(point(min_x, min_y), point(max_x, max_y));
+            ELSE
+                RETURN NULL;
+        END CASE;
+    END;
+$$ LANGUAGE plpgsql IMMUTABLE;
+
+CREATE TABLE _shape_region (
+    shape_id BIGINT PRIMARY KEY REFERENCES shape (id) ON DELETE CASCADE,
+    image_id BIGINT NOT NULL,
+    thez INTEGER,
+    thet INTEGER,
+    bbox box NOT NULL);
+
+DO $$
+    BEGIN
+        IF EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'btree_gist') THEN
+            CREATE INDEX _shape_region_bbox ON _shape_region USING gist (image_id, bbox);
+        ELSE
+            CREATE INDEX _shape_region_image ON _shape_region (image_id);
+            CREATE INDEX _shape_region_bbox ON _shape_region USING gist (bbox);
+        END IF;
+    END;
+$$;
+
+CREATE FUNCTION _shape_region_update(sid BIGINT) RETURNS void AS $$
+
+    BEGIN
+        DELETE FROM _shape_region WHERE shape_id = sid;
+
+        INSERT INTO _shape_region (shape_id, image_id, thez, thet, bbox)
+            SELECT s.id, r.image, s.thez, s.thet,
+                   _shape_bbox(s.discriminator, s.x, s.y, s.width, s.height, s.radiusx, s.radiusy,
+                               s.x1, s.y1, s.x2, s.y2, s.points)
+                FROM shape AS s, roi AS r
+                WHERE s.id = sid AND s.roi = r.id AND r.image IS NOT NULL
+                  AND _shape_bbox(s.discriminator, s.x, s.y, s.width, s.height, s.radiusx, s.radiusy,
+                                  s.x1, s.y1, s.x2, s.y2, s.points) IS NOT NULL;
+    END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION _shape_region_shape_trigger() RETURNS TRIGGER AS $$
+
+    BEGIN
+        PERFORM _shape_region_update(NEW.id);
+        RETURN NEW;
+    END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION _shape_region_roi_trigger() RETURNS TRIGGER AS $$
+
+    BEGIN
+        IF OLD.image IS NOT DISTINCT FROM NEW.image THEN
+            RETURN NEW;
+        END IF;
+
+        IF NEW.image IS NULL THEN
+            DELETE FROM _shape_region WHERE shape_id IN (SELECT id FROM shape WHERE roi = NEW.id);
+        ELSE
+            PERFORM _shape_region_update(s.id) FROM shape AS s WHERE s.roi = NEW.id;
+        END IF;
+
+        RETURN NEW;
+    END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER _shape_region_shape_trigger
+    AFTER INSERT OR UPDATE ON shape
+    FOR EACH ROW
+    EXECUTE PROCEDURE _shape_region_shape_trigger();
+
+CREATE TRIGGER _shape_region_roi_trigger
+    AFTER UPDATE ON roi
+    FOR EACH ROW
+    EXECUTE PROCEDURE _shape_region_roi_trigger();
+
+CREATE FUNCTION _shapes_in_region(image BIGINT, z INTEGER, t INTEGER,
+                                  x FLOAT8, y FLOAT8, width FLOAT8, height FLOAT8)
+    RETURNS SETOF BIGINT AS $$
+
+    SELECT shape_id FROM _shape_region
+        WHERE image_id = $1
+          AND (thez IS NULL OR thez = $2)
+          AND (thet IS NULL OR thet = $3)
+          AND bbox && box(point($4, $5), point($4 + $6, $5 + $7));
+$$ LANGUAGE sql STABLE;
+
+INSERT INTO _shape_region (shape_id, image_id, thez, thet, bbox)
+    SELECT s.id, r.image, s.thez, s.thet,
+           _shape_bbox(s.discriminator, s.x, s.y, s.width, s.height, s.radiusx, s.radiusy,
+                       s.x1, s.y1, s.x2, s.y2, s.points)
+        FROM shape AS s, roi AS r
+        WHERE s.roi = r.id AND r.image IS NOT NULL
+          AND _shape_bbox(s.discriminator, s.x, s.y, s.width, s.height, s.radiusx, s.radiusy,
+                          s.x1, s.y1, s.x2, s.y2, s.points) IS NOT NULL;
+
+ANALYZE _shape_region;
+
+
+--
+-- FINISHED
+--
+
+UPDATE dbpatch SET message = 'Shape region index created.', finished = clock_timestamp()
+    WHERE id IN (SELECT id FROM dbpatch ORDER BY id DESC LIMIT 1);
+
+SELECT 'YOU HAVE SUCCESSFULLY CREATED THE SHAPE REGION INDEX' AS Status;
+
+COMMIT;
@@ -0,0 +1,169 @@
+-- Copyright (C) 2026 University of Dundee & Open Microscopy Environment.
+-- All rights reserved.
+-- Use is subject to license terms supplied in LICENSE.txt
+--
+-- This program is free software; you can redistribute it and/or modify
+-- it under the terms of the GNU General Public License as published by
+-- the Free Software Foundation; either version 2 of the License, or
+-- (at your option) any later version.
+--
+-- This program is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+-- GNU General Public License for more details.
+--
+-- You should have received a copy of the GNU General Public License along
+-- with this program; if not, write to the Free Software Foundation, Inc.,
+-- 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+--
+
+---
+--- Optional usage counters of the OMERO5.4__0 database.
+---
+--- _usage_counter holds changes to the number and total size of the
+--- original files of every owner in every group. A trigger on originalfile
+--- appends a row as files are imported, deleted, or change owner or group
+--- through chown and chgrp, so concurrent imports never wait on a shared
+--- counter row. The _usage view sums the rows into the totals, so that
+--- quota reports read a few rows per owner rather than summing over every
+--- file, and _usage_counter_compact() folds the rows of each owner and
+--- group back into one. It should be run regularly, e.g. from cron.
+---
+--- _usage_counter_check() recomputes the totals from originalfile and
+--- returns those which differ from the counters, for auditing, and
+--- _usage_counter_rebuild() resets the counters to the recomputed totals.
+---
+
+BEGIN;
+
+
+--
+-- check OMERO database version
+--
+
+CREATE OR REPLACE FUNCTION omero_assert_db_version(expected_version VARCHAR, expected_patch INTEGER)
+    RETURNS void AS $$
+
+DECLARE
+    current_version VARCHAR;
+    current_patch INTEGER;
+
+BEGIN
+    SELECT currentversion, currentpatch INTO STRICT current_version, current_patch
+        FROM dbpatch ORDER BY id DESC LIMIT 1;
+
+    IF current_version <> expected_version OR current_patch <> expected_patch THEN
+        RAISE EXCEPTION 'wrong OMERO database version for this upgrade script';
+    END IF;
+
+END;$$ LANGUAGE plpgsql;
+
+SELECT omero_assert_db_version('OMERO5.4', 0);
+DROP FUNCTION omero_assert_db_version(varchar, int);
+
+
+--
+-- Actual upgrade
+--
+
+INSERT INTO dbpatch (currentVersion, currentPatch, previousVersion, previousPatch)
+             VALUES ('OMERO5.4',     0,            'OMERO5.4',      0);
+
+CREATE TABLE _usage_counter (
+    owner_id BIGINT NOT NULL,
+    group_id BIGINT NOT NULL,
+    file_count BIGINT NOT NULL,
+    bytes_used BIGINT NOT NULL);
+
+CREATE INDEX _usage_counter_owner_group ON _usage_counter (owner_id, group_id);
+CREATE INDEX _usage_counter_group ON _usage_counter (group_id);
+
+CREATE VIEW _usage AS
+    SELECT owner_id, group_id, SUM(file_count)::BIGINT AS file_count,
+           SUM(bytes_used)::BIGINT AS bytes_used
+        FROM _usage_counter
+        GROUP BY owner_id, group_id;
+
+CREATE FUNCTION _usage_counter_trigger() RETURNS TRIGGER AS $$
+
+    BEGIN
+        IF TG_OP = 'UPDATE' AND OLD.owner_id = NEW.owner_id AND OLD.group_id = NEW.group_id
+           AND OLD."size" IS NOT DISTINCT FROM NEW."size" THEN
+            RETURN NULL;
+        END IF;
+
+        IF TG_OP <> 'INSERT' THEN
+            INSERT INTO _usage_counter (owner_id, group_id, file_count, bytes_used)
+                VALUES (OLD.owner_id, OLD.group_id, -1, -COALESCE(OLD."size", 0));
+        END IF;
+        IF TG_OP <> 'DELETE' THEN
+            INSERT INTO _usage_counter (owner_id, group_id, file_count, bytes_used)
+                VALUES (NEW.owner_id, NEW.group_id, 1, COALESCE(NEW."size", 0));
+        END IF;
+
+        RETURN NULL;
+    END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER _usage_counter_trigger
+    AFTER INSERT OR UPDATE OR DELETE ON originalfile
+    FOR EACH ROW
+    EXECUTE PROCEDURE _usage_counter_trigger();
+
+-- only the rows visible when it starts are replaced, rows appended
+-- meanwhile by other transactions are kept for the next run
+CREATE FUNCTION _usage_counter_compact() RETURNS void AS $$
+
+    WITH deleted AS (DELETE FROM _usage_counter RETURNING *)
+    INSERT INTO _usage_counter (owner_id, group_id, file_count, bytes_used)
+        SELECT owner_id, group_id, SUM(file_count), SUM(bytes_used)
+            FROM deleted
+            GROUP BY owner_id, group_id
+            HAVING SUM(file_count) <> 0 OR SUM(bytes_used) <> 0;
+$$ LANGUAGE sql;
+
+CREATE FUNCTION _usage_counter_check()
+    RETURNS TABLE (owner_id BIGINT, group_id BIGINT,
+                   counted_files BIGINT, counted_bytes BIGINT,
+                   actual_files BIGINT, actual_bytes BIGINT) AS $$
+
+    SELECT COALESCE(u.owner_id, f.owner_id), COALESCE(u.group_id, f.group_id),
+           COALESCE(u.file_count, 0), COALESCE(u.bytes_used, 0),
+           COALESCE(f.file_count, 0), COALESCE(f.bytes_used, 0)
+        FROM _usage AS u
+        FULL OUTER JOIN (SELECT o.owner_id, o.group_id, COUNT(*) AS file_count,
+                                COALESCE(SUM(o."size"), 0) AS bytes_used
+                             FROM originalfile AS o
+                             GROUP BY o.owner_id, o.group_id) AS f
+            ON u.owner_id = f.owner_id AND u.group_id = f.group_id
+        WHERE COALESCE(u.file_count, 0) <> COALESCE(f.file_count, 0)
+           OR COALESCE(u.bytes_used, 0) <> COALESCE(f.bytes_used, 0);
+$$ LANGUAGE sql STABLE;
+
+CREATE FUNCTION _usage_counter_rebuild() RETURNS void AS $$
+
+    BEGIN
+        LOCK TABLE _usage_counter IN EXCLUSIVE MODE;
+        DELETE FROM _usage_counter;
+        INSERT INTO _usage_counter (owner_id, group_id, file_count, bytes_used)
+            SELECT owner_id, group_id, COUNT(*), COALESCE(SUM("size"), 0)
+                FROM originalfile
+                GROUP BY owner_id, group_id;
+    END;
+$$ LANGUAGE plpgsql;
+
+SELECT _usage_counter_rebuild();
+
+ANALYZE _usage_counter;
+
+
+--
+-- FINISHED
+--
+
+UPDATE dbpatch SET message = 'Usage counters created.', finished = clock_timestamp()
+    WHERE id IN (SELECT id FROM dbpatch ORDER BY id DESC LIMIT 1);
+
+SELECT 'YOU HAVE SUCCESSFULLY CREATED THE USAGE COUNTERS' AS Status;
+
+COMMIT;